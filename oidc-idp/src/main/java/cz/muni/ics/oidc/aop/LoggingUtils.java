@@ -5,6 +5,7 @@ import org.aspectj.lang.ProceedingJoinPoint;
 import org.slf4j.Logger;
 
 import java.sql.Timestamp;
+import java.util.function.Supplier;
 
 /**
  * Utility class that takes care of the logging for AOP.
@@ -70,4 +71,36 @@ public class LoggingUtils {
         }
     }
 
+    /**
+     * Log at TRACE level times of start and end of the call, for calls not passing through the aspect
+     * (i.e. made by the object itself in another thread).
+     * @param log Logger object.
+     * @param className Name of the class of the called object.
+     * @param methodName Name of the called method.
+     * @param args Arguments of the call.
+     * @param call The call to be made.
+     * @param <T> Type of the returned value.
+     * @return Value returned by the call.
+     */
+    public static <T> T logExecutionTimes(Logger log, String className, String methodName, Object[] args,
+                                          Supplier<T> call)
+    {
+        long start = System.currentTimeMillis();
+
+        log.trace("Execution of {}.{}({}) started at {}",
+                className, methodName, args.length > 0 ? args : "", new Timestamp(start));
+        try {
+            T result = call.get();
+            long finish = System.currentTimeMillis();
+            log.trace("Execution of {}.{}({}) finished successfully at {}, execution took {}ms",
+                    className, methodName, args.length > 0 ? args : "", new Timestamp(finish), finish - start);
+            return result;
+        } catch (RuntimeException e) {
+            long finish = System.currentTimeMillis();
+            log.trace("Execution of {}.{}({}) finished by exception being thrown at {}, execution took {}ms",
+                    className, methodName, args.length > 0 ? args : "", new Timestamp(finish), finish - start);
+            throw e;
+        }
+    }
+
 }
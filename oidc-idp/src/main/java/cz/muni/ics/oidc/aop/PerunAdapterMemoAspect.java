@@ -0,0 +1,34 @@
+package cz.muni.ics.oidc.aop;
+
+import cz.muni.ics.oidc.server.adapters.PerunAdapterRequestMemo;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Remembers results of the calls to the PerunAdapter methods for the duration of the HTTP request.
+ *
+ * @see PerunAdapterRequestMemo
+ *
+ * @author Pavol Pluta <pavol.pluta1@gmail.com>
+ */
+@Aspect
+@Component
+public class PerunAdapterMemoAspect {
+
+    private final PerunAdapterRequestMemo memo;
+
+    @Autowired
+    public PerunAdapterMemoAspect(PerunAdapterRequestMemo memo) {
+        this.memo = memo;
+    }
+
+    @Around("execution(* cz.muni.ics.oidc.server.adapters.PerunAdapterMethods.*(..)) " +
+            "&& within(cz.muni.ics.oidc.server.adapters.impl.PerunAdapterImpl)")
+    public Object memoize(ProceedingJoinPoint pjp) throws Throwable {
+        return memo.get(pjp.getSignature().toLongString(), pjp.getArgs(), pjp::proceed);
+    }
+
+}
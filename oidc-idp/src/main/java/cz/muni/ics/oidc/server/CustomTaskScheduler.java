@@ -1,5 +1,7 @@
 package cz.muni.ics.oidc.server;
 
+import cz.muni.ics.oidc.server.userInfo.JdbcUserInfoChangeEventSource;
+import cz.muni.ics.oidc.server.userInfo.UserInfoSharedCache;
 import net.javacrumbs.shedlock.core.LockAssert;
 import net.javacrumbs.shedlock.core.LockProvider;
 import net.javacrumbs.shedlock.provider.jdbctemplate.JdbcTemplateLockProvider;
@@ -34,13 +36,19 @@ public class CustomTaskScheduler {
 
 	private final CustomClearTasks customClearTasks;
 	private final DataSource dataSource;
+	private final UserInfoSharedCache userInfoSharedCache;
+	private final JdbcUserInfoChangeEventSource userInfoChangeEventSource;
 
 	@Autowired
 	public CustomTaskScheduler(CustomClearTasks customClearTasks,
-							   @Qualifier("dataSource") DataSource dataSource)
+							   @Qualifier("dataSource") DataSource dataSource,
+							   UserInfoSharedCache userInfoSharedCache,
+							   JdbcUserInfoChangeEventSource userInfoChangeEventSource)
 	{
 		this.customClearTasks = customClearTasks;
 		this.dataSource = dataSource;
+		this.userInfoSharedCache = userInfoSharedCache;
+		this.userInfoChangeEventSource = userInfoChangeEventSource;
 	}
 
 	@Bean
@@ -138,4 +146,38 @@ public class CustomTaskScheduler {
 		log.info("clearExpiredDeviceAcrs took {}ms, deleted {} records", execution, count);
 	}
 
+	@Scheduled(fixedDelay = 10 * ONE_MINUTE, initialDelay = 5 * ONE_MINUTE)
+	@SchedulerLock(name = "clearExpiredUserInfoCache", lockAtMostFor = "590s", lockAtLeastFor = "590s")
+	public void clearExpiredUserInfoCache() {
+		try {
+			LockAssert.assertLocked();
+		} catch (IllegalArgumentException e) {
+			return;
+		}
+		if (!userInfoSharedCache.isEnabled()) {
+			return;
+		}
+		long start = System.currentTimeMillis();
+		int count = this.userInfoSharedCache.clearExpired();
+		long execution = System.currentTimeMillis() - start;
+		log.info("clearExpiredUserInfoCache took {}ms, deleted {} records", execution, count);
+	}
+
+	@Scheduled(fixedDelay = 60 * ONE_MINUTE, initialDelay = 30 * ONE_MINUTE)
+	@SchedulerLock(name = "clearOldUserInfoChangeEvents", lockAtMostFor = "3590s", lockAtLeastFor = "3590s")
+	public void clearOldUserInfoChangeEvents() {
+		try {
+			LockAssert.assertLocked();
+		} catch (IllegalArgumentException e) {
+			return;
+		}
+		if (!userInfoChangeEventSource.isEnabled()) {
+			return;
+		}
+		long start = System.currentTimeMillis();
+		int count = this.userInfoChangeEventSource.clearOld();
+		long execution = System.currentTimeMillis() - start;
+		log.info("clearOldUserInfoChangeEvents took {}ms, deleted {} records", execution, count);
+	}
+
 }
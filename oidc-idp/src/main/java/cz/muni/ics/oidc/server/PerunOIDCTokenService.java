@@ -6,9 +6,11 @@ import com.google.gson.JsonPrimitive;
 import com.nimbusds.jose.util.JSONObjectUtils;
 import com.nimbusds.jwt.JWTClaimsSet;
 import cz.muni.ics.oidc.server.configurations.PerunOidcConfig;
+import cz.muni.ics.oidc.server.userInfo.PerunUserInfoService;
 import net.minidev.json.JSONArray;
 import org.mitre.oauth2.model.ClientDetailsEntity;
 import org.mitre.oauth2.model.OAuth2AccessTokenEntity;
+import org.mitre.openid.connect.model.UserInfo;
 import org.mitre.openid.connect.models.Acr;
 import org.mitre.openid.connect.models.DeviceCodeAcr;
 import org.mitre.openid.connect.service.ScopeClaimTranslationService;
@@ -67,8 +69,15 @@ public class PerunOIDCTokenService extends DefaultOIDCTokenService {
 		Set<String> authorizedClaims = translator.getClaimsForScopeSet(scopes);
 		Set<String> idTokenClaims = translator.getClaimsForScopeSet(perunOidcConfig.getIdTokenScopes());
 
-		for (Map.Entry<String, JsonElement> claim : userInfoService.getByUsernameAndClientId(userId,
-				clientId).toJson().entrySet()) {
+		UserInfo userInfo;
+		if (userInfoService instanceof PerunUserInfoService) {
+			// produce only the custom claims released by the scopes of the token
+			userInfo = ((PerunUserInfoService) userInfoService).getByUsernameAndClientId(userId, clientId, scopes);
+		} else {
+			userInfo = userInfoService.getByUsernameAndClientId(userId, clientId);
+		}
+
+		for (Map.Entry<String, JsonElement> claim : userInfo.toJson().entrySet()) {
 			String claimKey = claim.getKey();
 			JsonElement claimValue = claim.getValue();
 			if (claimValue != null && !claimValue.isJsonNull() && authorizedClaims.contains(claimKey)
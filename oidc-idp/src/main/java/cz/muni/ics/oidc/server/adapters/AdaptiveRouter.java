@@ -0,0 +1,158 @@
+package cz.muni.ics.oidc.server.adapters;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Routes calls to the adapter performing better for the called method. For each method and adapter, latency
+ * and error rate of the calls are tracked as exponentially weighted moving averages. The call goes to the adapter
+ * with lower score (latency plus error rate multiplied by the penalty for a failed call). The configured primary
+ * adapter keeps the call unless the other one is better by more than 10 %, so the routing does not flap.
+ *
+ * Methods found to be unsupported by an adapter are never routed to it. A small fraction of the calls
+ * (explorationRate) goes to the other adapter, so its statistics stay up to date.
+ *
+ * @author Pavol Pluta <pavol.pluta1@gmail.com>
+ */
+public class AdaptiveRouter {
+
+	private static final int MIN_SAMPLES = 10;
+	private static final double HYSTERESIS = 0.1;
+	private static final double ERROR_PENALTY_MS = 5000;
+
+	private final double alpha;
+	private final double explorationRate;
+	private final Map<String, Map<String, Stats>> methods = new ConcurrentHashMap<>();
+
+	/**
+	 * Create router.
+	 * @param alpha Weight (0-1) of the last call in the moving averages.
+	 * @param explorationRate Fraction (0-1) of the calls routed to the worse adapter to refresh its statistics.
+	 */
+	public AdaptiveRouter(double alpha, double explorationRate) {
+		this.alpha = Math.min(1, Math.max(0.01, alpha));
+		this.explorationRate = Math.min(1, Math.max(0, explorationRate));
+	}
+
+	/**
+	 * Decide if the call of the method should be routed to the other adapter.
+	 * @param method Name of the called method.
+	 * @param primary Name of the configured primary adapter.
+	 * @param other Name of the other adapter.
+	 * @return TRUE if the other adapter should be called first, FALSE if the primary one.
+	 */
+	public boolean preferOther(String method, String primary, String other) {
+		Stats primaryStats = getStats(method, primary);
+		Stats otherStats = getStats(method, other);
+		if (otherStats.isUnsupported()) {
+			return false;
+		} else if (primaryStats.isUnsupported()) {
+			return true;
+		}
+
+		boolean explore = explorationRate > 0 && ThreadLocalRandom.current().nextDouble() < explorationRate;
+		if (otherStats.getSamples() < MIN_SAMPLES || primaryStats.getSamples() < MIN_SAMPLES) {
+			return otherStats.getSamples() < MIN_SAMPLES && explore;
+		}
+
+		boolean otherBetter = otherStats.getScore() < primaryStats.getScore() * (1 - HYSTERESIS);
+		return explore != otherBetter;
+	}
+
+	/**
+	 * Record successful call (including errors reported by Perun, as the adapter has answered).
+	 * @param method Name of the called method.
+	 * @param adapter Name of the called adapter.
+	 * @param durationMs Duration of the call.
+	 */
+	public void onSuccess(String method, String adapter, long durationMs) {
+		getStats(method, adapter).record(durationMs, 0, alpha);
+	}
+
+	/**
+	 * Record failed call.
+	 * @param method Name of the called method.
+	 * @param adapter Name of the called adapter.
+	 * @param durationMs Duration of the call.
+	 */
+	public void onFailure(String method, String adapter, long durationMs) {
+		getStats(method, adapter).record(durationMs, 1, alpha);
+	}
+
+	/**
+	 * Record the method is not supported by the adapter.
+	 * @param method Name of the called method.
+	 * @param adapter Name of the called adapter.
+	 */
+	public void onUnsupported(String method, String adapter) {
+		getStats(method, adapter).setUnsupported();
+	}
+
+	/**
+	 * Get statistics of the routing.
+	 * @return Map of statistics per method and adapter.
+	 */
+	public Map<String, Object> getStats() {
+		Map<String, Object> stats = new TreeMap<>();
+		methods.forEach((method, adapters) -> {
+			Map<String, Object> methodStats = new TreeMap<>();
+			adapters.forEach((adapter, adapterStats) -> methodStats.put(adapter, adapterStats.toMap()));
+			stats.put(method, methodStats);
+		});
+		return stats;
+	}
+
+	private Stats getStats(String method, String adapter) {
+		return methods.computeIfAbsent(method, k -> new ConcurrentHashMap<>())
+				.computeIfAbsent(adapter, k -> new Stats());
+	}
+
+	private static class Stats {
+
+		private double latencyMs = 0;
+		private double errorRate = 0;
+		private long samples = 0;
+		private boolean unsupported = false;
+
+		synchronized void record(long durationMs, double error, double alpha) {
+			if (samples == 0) {
+				latencyMs = durationMs;
+				errorRate = error;
+			} else {
+				latencyMs += alpha * (durationMs - latencyMs);
+				errorRate += alpha * (error - errorRate);
+			}
+			samples++;
+		}
+
+		synchronized void setUnsupported() {
+			unsupported = true;
+		}
+
+		synchronized boolean isUnsupported() {
+			return unsupported;
+		}
+
+		synchronized long getSamples() {
+			return samples;
+		}
+
+		synchronized double getScore() {
+			return latencyMs + errorRate * ERROR_PENALTY_MS;
+		}
+
+		synchronized Map<String, Object> toMap() {
+			Map<String, Object> map = new LinkedHashMap<>();
+			map.put("latencyMs", Math.round(latencyMs));
+			map.put("errorRate", errorRate);
+			map.put("samples", samples);
+			map.put("unsupported", unsupported);
+			return map;
+		}
+
+	}
+
+}
@@ -0,0 +1,185 @@
+package cz.muni.ics.oidc.server.adapters;
+
+import cz.muni.ics.oidc.server.configurations.CircuitBreakerConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Circuit breaker of a Perun adapter. Outcomes of the last calls (sliding window of windowSize calls) are recorded.
+ * When the rate of failed or slow calls exceeds the threshold, the breaker opens and rejects calls for
+ * openDurationSecs. Then it lets halfOpenCalls probing calls through - if all of them succeed, the breaker closes,
+ * otherwise it opens again.
+ *
+ * Each call permitted by {@link #tryAcquire()} has to be finished by exactly one of {@link #onSuccess(long)},
+ * {@link #onFailure(long)} or {@link #onIgnored()}.
+ *
+ * @author Pavol Pluta <pavol.pluta1@gmail.com>
+ */
+public class CircuitBreaker {
+
+	private static final Logger log = LoggerFactory.getLogger(CircuitBreaker.class);
+
+	public enum State {
+		CLOSED, OPEN, HALF_OPEN
+	}
+
+	private final String name;
+	private final CircuitBreakerConfig config;
+
+	private final boolean[] failed;
+	private final boolean[] slow;
+	private int position = 0;
+	private int recorded = 0;
+
+	private State state = State.CLOSED;
+	private long openUntil = 0;
+	private int halfOpenPermitted = 0;
+	private int halfOpenSucceeded = 0;
+
+	private long openedCount = 0;
+	private long rejectedCount = 0;
+
+	public CircuitBreaker(String name, CircuitBreakerConfig config) {
+		this.name = name;
+		this.config = config;
+		this.failed = new boolean[config.getWindowSize()];
+		this.slow = new boolean[config.getWindowSize()];
+	}
+
+	/**
+	 * Ask for permission to call the adapter.
+	 * @return TRUE if the call is permitted, FALSE if the breaker is open.
+	 */
+	public synchronized boolean tryAcquire() {
+		if (state == State.OPEN && System.currentTimeMillis() >= openUntil) {
+			log.info("circuit breaker of {} is half-open, probing the adapter", name);
+			state = State.HALF_OPEN;
+			halfOpenPermitted = 0;
+			halfOpenSucceeded = 0;
+		}
+
+		switch (state) {
+			case CLOSED:
+				return true;
+			case HALF_OPEN:
+				if (halfOpenPermitted < config.getHalfOpenCalls()) {
+					halfOpenPermitted++;
+					return true;
+				}
+				rejectedCount++;
+				return false;
+			default:
+				rejectedCount++;
+				return false;
+		}
+	}
+
+	/**
+	 * Record successful call.
+	 * @param durationMs Duration of the call.
+	 */
+	public synchronized void onSuccess(long durationMs) {
+		boolean isSlow = durationMs >= config.getSlowCallDurationMs();
+		if (state == State.HALF_OPEN) {
+			if (isSlow) {
+				open();
+			} else if (++halfOpenSucceeded >= config.getHalfOpenCalls()) {
+				log.info("circuit breaker of {} is closed", name);
+				state = State.CLOSED;
+				reset();
+			}
+			return;
+		}
+		record(false, isSlow);
+	}
+
+	/**
+	 * Record failed call.
+	 * @param durationMs Duration of the call.
+	 */
+	public synchronized void onFailure(long durationMs) {
+		if (state == State.HALF_OPEN) {
+			open();
+			return;
+		}
+		record(true, durationMs >= config.getSlowCallDurationMs());
+	}
+
+	/**
+	 * Release permission of the call whose outcome says nothing about the health of the adapter
+	 * (i.e. operation not supported by the adapter).
+	 */
+	public synchronized void onIgnored() {
+		if (state == State.HALF_OPEN && halfOpenPermitted > 0) {
+			halfOpenPermitted--;
+		}
+	}
+
+	public synchronized State getState() {
+		return state;
+	}
+
+	/**
+	 * Get statistics of the breaker.
+	 * @return Map of statistics.
+	 */
+	public synchronized Map<String, Object> getStats() {
+		Map<String, Object> stats = new LinkedHashMap<>();
+		stats.put("state", state.name());
+		stats.put("failureRate", rate(failed));
+		stats.put("slowCallRate", rate(slow));
+		stats.put("recordedCalls", recorded);
+		stats.put("openedCount", openedCount);
+		stats.put("rejectedCount", rejectedCount);
+		return stats;
+	}
+
+	private void record(boolean isFailed, boolean isSlow) {
+		failed[position] = isFailed;
+		slow[position] = isSlow;
+		position = (position + 1) % failed.length;
+		recorded = Math.min(recorded + 1, failed.length);
+
+		if (state == State.CLOSED && recorded >= config.getMinimumCalls()
+				&& (rate(failed) >= config.getFailureRateThreshold() || rate(slow) >= config.getSlowCallRateThreshold()))
+		{
+			open();
+		}
+	}
+
+	private void open() {
+		log.warn("circuit breaker of {} is open for {} seconds (failure rate {}%, slow call rate {}%)", name,
+				config.getOpenDurationSecs(), rate(failed), rate(slow));
+		state = State.OPEN;
+		openUntil = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(config.getOpenDurationSecs());
+		openedCount++;
+		reset();
+	}
+
+	private void reset() {
+		position = 0;
+		recorded = 0;
+		for (int i = 0; i < failed.length; i++) {
+			failed[i] = false;
+			slow[i] = false;
+		}
+	}
+
+	private int rate(boolean[] outcomes) {
+		if (recorded == 0) {
+			return 0;
+		}
+		int count = 0;
+		for (int i = 0; i < recorded; i++) {
+			if (outcomes[i]) {
+				count++;
+			}
+		}
+		return count * 100 / recorded;
+	}
+
+}
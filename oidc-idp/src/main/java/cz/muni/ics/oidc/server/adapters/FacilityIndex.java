@@ -0,0 +1,260 @@
+package cz.muni.ics.oidc.server.adapters;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import cz.muni.ics.oidc.models.Facility;
+import cz.muni.ics.oidc.models.PerunAttributeValue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * In-memory index of facilities by the client_id of their OIDC clients, including values of the selected facility
+ * attributes. The index is loaded for all registered clients in background after start. Periodic refreshes then
+ * compare the index with the list of registered clients - removed clients are dropped and only the new clients
+ * and the entries older than maxAgeSecs are loaded from Perun. Entries of changed facilities are dropped
+ * by {@link #invalidateFacility(Long)} and loaded again on the next access.
+ * Clients without facility are indexed as well, but only for negativeTtlSecs, so a facility created later is found.
+ *
+ * @author Pavol Pluta <pavol.pluta1@gmail.com>
+ */
+public class FacilityIndex {
+
+	private static final Logger log = LoggerFactory.getLogger(FacilityIndex.class);
+
+	@FunctionalInterface
+	public interface FacilityLoader {
+		Facility load(String clientId);
+	}
+
+	@FunctionalInterface
+	public interface AttributesLoader {
+		Map<String, PerunAttributeValue> load(Long facilityId, Collection<String> attrNames);
+	}
+
+	private final Map<String, Entry> byClientId = new ConcurrentHashMap<>();
+	private final Map<Long, Entry> byFacilityId = new ConcurrentHashMap<>();
+
+	private final FacilityLoader facilityLoader;
+	private final AttributesLoader attributesLoader;
+	private final Supplier<Collection<String>> clientIdsSupplier;
+	private final Set<String> attrNames;
+	private final long refreshSecs;
+	private final long maxAgeMillis;
+	private final long negativeTtlMillis;
+	private ScheduledExecutorService executor;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong attributeHits = new AtomicLong();
+	private final AtomicLong refreshes = new AtomicLong();
+	private final AtomicLong reloads = new AtomicLong();
+	private final AtomicLong errors = new AtomicLong();
+
+	/**
+	 * Create index.
+	 * @param facilityLoader Loads facility by client_id from Perun.
+	 * @param attributesLoader Loads attributes of facility from Perun.
+	 * @param clientIdsSupplier Supplies client_ids of all registered clients.
+	 * @param attrNames Names of facility attributes to be kept in the index.
+	 * @param refreshSecs Seconds between refreshes of the index.
+	 * @param maxAgeSecs Seconds after which the entry is reloaded by the refresh.
+	 * @param negativeTtlSecs Seconds for which the client without facility is kept in the index.
+	 */
+	public FacilityIndex(FacilityLoader facilityLoader, AttributesLoader attributesLoader,
+						 Supplier<Collection<String>> clientIdsSupplier, Set<String> attrNames, long refreshSecs,
+						 long maxAgeSecs, long negativeTtlSecs)
+	{
+		this.facilityLoader = facilityLoader;
+		this.attributesLoader = attributesLoader;
+		this.clientIdsSupplier = clientIdsSupplier;
+		this.attrNames = new HashSet<>(attrNames);
+		this.refreshSecs = refreshSecs;
+		this.maxAgeMillis = TimeUnit.SECONDS.toMillis(maxAgeSecs);
+		this.negativeTtlMillis = TimeUnit.SECONDS.toMillis(negativeTtlSecs);
+	}
+
+	/**
+	 * Start loading of the index in background.
+	 */
+	public void start() {
+		executor = Executors.newSingleThreadScheduledExecutor(
+				new ThreadFactoryBuilder().setNameFormat("facility-index-%d").setDaemon(true).build());
+		executor.scheduleWithFixedDelay(this::refresh, 0, refreshSecs, TimeUnit.SECONDS);
+		log.info("Facility index - refresh interval: {}s, max age: {}s, negative TTL: {}s, attributes: {}",
+				refreshSecs, TimeUnit.MILLISECONDS.toSeconds(maxAgeMillis),
+				TimeUnit.MILLISECONDS.toSeconds(negativeTtlMillis), attrNames);
+	}
+
+	public void stop() {
+		if (executor != null) {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Get facility of the client. If the client is not indexed yet, the facility is loaded from Perun.
+	 * @param clientId client_id of the client.
+	 * @return Facility or NULL if the client has no facility.
+	 */
+	public Facility getFacility(String clientId) {
+		Entry entry = byClientId.get(clientId);
+		if (entry != null && !isExpiredNegative(entry, System.currentTimeMillis())) {
+			hits.incrementAndGet();
+			return entry.facility;
+		}
+
+		misses.incrementAndGet();
+		log.debug("client {} not found in facility index, loading it", clientId);
+		return load(clientId).facility;
+	}
+
+	/**
+	 * Get values of facility attributes kept in the index.
+	 * @param facilityId ID of the facility.
+	 * @param attrsToFetch Names of the attributes.
+	 * @return Map of attrName:PerunAttributeValue, NULL if the facility or some of the attributes is not indexed.
+	 */
+	public Map<String, PerunAttributeValue> getAttributeValues(Long facilityId, Collection<String> attrsToFetch) {
+		if (facilityId == null) {
+			return null;
+		}
+		Entry entry = byFacilityId.get(facilityId);
+		if (entry == null || !entry.attributes.keySet().containsAll(attrsToFetch)) {
+			return null;
+		}
+
+		attributeHits.incrementAndGet();
+		Map<String, PerunAttributeValue> result = new HashMap<>();
+		for (String attrName : attrsToFetch) {
+			result.put(attrName, entry.attributes.get(attrName));
+		}
+		return result;
+	}
+
+	/**
+	 * Drop the entries of the changed facility and the clients without facility (the facility might have been
+	 * assigned to some of them). They are loaded from Perun again on the next access.
+	 * @param facilityId ID of the facility.
+	 */
+	public void invalidateFacility(Long facilityId) {
+		if (facilityId != null) {
+			byFacilityId.remove(facilityId);
+		}
+		int count = 0;
+		for (Map.Entry<String, Entry> mapEntry : byClientId.entrySet()) {
+			Facility facility = mapEntry.getValue().facility;
+			if (facility == null || Objects.equals(facility.getId(), facilityId)) {
+				if (byClientId.remove(mapEntry.getKey(), mapEntry.getValue())) {
+					count++;
+				}
+			}
+		}
+		log.debug("facility {} invalidated in facility index, {} clients dropped", facilityId, count);
+	}
+
+	/**
+	 * Get statistics of the index.
+	 * @return Map of statistics.
+	 */
+	public Map<String, Long> getStats() {
+		Map<String, Long> stats = new LinkedHashMap<>();
+		stats.put("size", (long) byClientId.size());
+		stats.put("hitCount", hits.get());
+		stats.put("missCount", misses.get());
+		stats.put("attributeHitCount", attributeHits.get());
+		stats.put("refreshCount", refreshes.get());
+		stats.put("reloadCount", reloads.get());
+		stats.put("errorCount", errors.get());
+		return stats;
+	}
+
+	private Entry load(String clientId) {
+		Facility facility = facilityLoader.load(clientId);
+		Map<String, PerunAttributeValue> attributes = Collections.emptyMap();
+		if (facility != null && !attrNames.isEmpty()) {
+			attributes = new HashMap<>(attributesLoader.load(facility.getId(), attrNames));
+		}
+
+		Entry entry = new Entry(facility, attributes, System.currentTimeMillis());
+		Entry previous = byClientId.put(clientId, entry);
+		if (previous != null && previous.facility != null) {
+			byFacilityId.remove(previous.facility.getId(), previous);
+		}
+		if (facility != null && facility.getId() != null) {
+			byFacilityId.put(facility.getId(), entry);
+		}
+		return entry;
+	}
+
+	private void refresh() {
+		long start = System.currentTimeMillis();
+		try {
+			Set<String> clientIds = new HashSet<>(clientIdsSupplier.get());
+			// clients that have been removed
+			for (String clientId : new HashSet<>(byClientId.keySet())) {
+				if (!clientIds.contains(clientId)) {
+					Entry removed = byClientId.remove(clientId);
+					if (removed != null && removed.facility != null) {
+						byFacilityId.remove(removed.facility.getId(), removed);
+					}
+				}
+			}
+			int loaded = 0;
+			long now = System.currentTimeMillis();
+			for (String clientId : clientIds) {
+				Entry entry = byClientId.get(clientId);
+				if (entry != null && now - entry.loadedAt < maxAgeMillis && !isExpiredNegative(entry, now)) {
+					continue;
+				}
+				try {
+					load(clientId);
+					loaded++;
+				} catch (RuntimeException e) {
+					// keep the previous entry, it will be refreshed next time
+					errors.incrementAndGet();
+					log.warn("cannot refresh facility of client {} in facility index", clientId);
+					log.debug("details:", e);
+				}
+			}
+			refreshes.incrementAndGet();
+			reloads.addAndGet(loaded);
+			log.info("facility index refreshed in {}ms, {} clients loaded, {} clients indexed",
+					System.currentTimeMillis() - start, loaded, byClientId.size());
+		} catch (RuntimeException e) {
+			// exception would stop the periodic execution
+			errors.incrementAndGet();
+			log.warn("cannot refresh facility index", e);
+		}
+	}
+
+	private boolean isExpiredNegative(Entry entry, long now) {
+		return entry.facility == null && now - entry.loadedAt >= negativeTtlMillis;
+	}
+
+	private static class Entry {
+		private final Facility facility;
+		private final Map<String, PerunAttributeValue> attributes;
+		private final long loadedAt;
+
+		Entry(Facility facility, Map<String, PerunAttributeValue> attributes, long loadedAt) {
+			this.facility = facility;
+			this.attributes = attributes;
+			this.loadedAt = loadedAt;
+		}
+	}
+
+}
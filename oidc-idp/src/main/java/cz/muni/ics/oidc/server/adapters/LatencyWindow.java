@@ -0,0 +1,53 @@
+package cz.muni.ics.oidc.server.adapters;
+
+import java.util.Arrays;
+
+/**
+ * Durations of the last successful calls of an adapter (sliding window of the given size).
+ *
+ * @author Pavol Pluta <pavol.pluta1@gmail.com>
+ */
+public class LatencyWindow {
+
+	private final long[] durations;
+	private int position = 0;
+	private int recorded = 0;
+
+	public LatencyWindow(int size) {
+		this.durations = new long[Math.max(1, size)];
+	}
+
+	/**
+	 * Record duration of the call.
+	 * @param durationMs Duration in milliseconds.
+	 */
+	public synchronized void record(long durationMs) {
+		durations[position] = durationMs;
+		position = (position + 1) % durations.length;
+		recorded = Math.min(recorded + 1, durations.length);
+	}
+
+	/**
+	 * Get number of the recorded durations (at most size of the window).
+	 * @return Number of recorded durations.
+	 */
+	public synchronized int getRecorded() {
+		return recorded;
+	}
+
+	/**
+	 * Get percentile of the recorded durations.
+	 * @param percentile Percentile (0-100).
+	 * @return Duration in milliseconds, -1 if nothing has been recorded.
+	 */
+	public synchronized long getPercentile(double percentile) {
+		if (recorded == 0) {
+			return -1;
+		}
+		long[] sorted = Arrays.copyOf(durations, recorded);
+		Arrays.sort(sorted);
+		int index = (int) Math.ceil(percentile / 100 * recorded) - 1;
+		return sorted[Math.max(0, Math.min(index, recorded - 1))];
+	}
+
+}
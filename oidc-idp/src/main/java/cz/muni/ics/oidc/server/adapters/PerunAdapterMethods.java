@@ -13,6 +13,7 @@ import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Interface for getting data from Perun interfaces.
@@ -325,4 +326,97 @@ public interface PerunAdapterMethods {
 	 * 	Returns FALSE otherwise.
 	 */
 	boolean isValidMemberInGroupsAndVos(Long userId, Set<Long> mandatoryVos, Set<Long> mandatoryGroups, Set<Long> envVos, Set<Long> envGroups);
+
+	/**
+	 * Declare if the adapter implements the method. Asked once at startup, methods not supported by the primary
+	 * adapter are bound directly to the fallback one instead of throwing UnsupportedOperationException on each call.
+	 *
+	 * @param methodName Name of the method of this interface
+	 * @return TRUE if the method is implemented, FALSE if it throws UnsupportedOperationException
+	 */
+	default boolean supports(String methodName) {
+		return true;
+	}
+
+	/**
+	 * Fetch facility associated with the given OIDC client_id value concurrently with other calls.
+	 * Adapters not able to call Perun asynchronously fetch the facility in the calling thread.
+	 *
+	 * @param clientId value for the OIDCClientID attribute
+	 * @return Future of found facility or null
+	 */
+	default CompletableFuture<Facility> getFacilityByClientIdAsync(String clientId) {
+		return CompletableFuture.completedFuture(getFacilityByClientId(clientId));
+	}
+
+	/**
+	 * Fetch user attribute values concurrently with other calls.
+	 * Adapters not able to call Perun asynchronously fetch the values in the calling thread.
+	 *
+	 * @param userId Id of the user for whom the attribute values are being fetch
+	 * @param attrsToFetch List of Strings representing attribute values to fetch
+	 * @return Future of map of attrName:PerunAttributeValue (filled or empty)
+	 */
+	default CompletableFuture<Map<String, PerunAttributeValue>> getUserAttributeValuesAsync(Long userId,
+																						   Collection<String> attrsToFetch)
+	{
+		return CompletableFuture.completedFuture(getUserAttributeValues(userId, attrsToFetch));
+	}
+
+	/**
+	 * Fetch facility attribute values concurrently with other calls.
+	 * Adapters not able to call Perun asynchronously fetch the values in the calling thread.
+	 *
+	 * @param facilityId Id of the facility for which the attribute values are being fetch
+	 * @param attrsToFetch List of Strings representing attribute values to fetch
+	 * @return Future of map of attrName:PerunAttributeValue (filled or empty)
+	 */
+	default CompletableFuture<Map<String, PerunAttributeValue>> getFacilityAttributeValuesAsync(Long facilityId,
+																							   Collection<String> attrsToFetch)
+	{
+		return CompletableFuture.completedFuture(getFacilityAttributeValues(facilityId, attrsToFetch));
+	}
+
+	/**
+	 * Fetch VO attribute values concurrently with other calls.
+	 * Adapters not able to call Perun asynchronously fetch the values in the calling thread.
+	 *
+	 * @param voId Id of the VO for which the attribute values are being fetch
+	 * @param attrsToFetch List of Strings representing attribute values to fetch
+	 * @return Future of map of attrName:PerunAttributeValue (filled or empty)
+	 */
+	default CompletableFuture<Map<String, PerunAttributeValue>> getVoAttributeValuesAsync(Long voId,
+																						 Collection<String> attrsToFetch)
+	{
+		return CompletableFuture.completedFuture(getVoAttributeValues(voId, attrsToFetch));
+	}
+
+	/**
+	 * Fetch group attribute values concurrently with other calls.
+	 * Adapters not able to call Perun asynchronously fetch the values in the calling thread.
+	 *
+	 * @param groupId Id of the group for which the attribute values are being fetch
+	 * @param attrsToFetch List of Strings representing attribute values to fetch
+	 * @return Future of map of attrName:PerunAttributeValue (filled or empty)
+	 */
+	default CompletableFuture<Map<String, PerunAttributeValue>> getGroupAttributeValuesAsync(Long groupId,
+																							Collection<String> attrsToFetch)
+	{
+		return CompletableFuture.completedFuture(getGroupAttributeValues(groupId, attrsToFetch));
+	}
+
+	/**
+	 * Fetch resource attribute values concurrently with other calls.
+	 * Adapters not able to call Perun asynchronously fetch the values in the calling thread.
+	 *
+	 * @param resourceId Id of the resource for which the attribute values are being fetch
+	 * @param attrsToFetch List of Strings representing attribute values to fetch
+	 * @return Future of map of attrName:PerunAttributeValue (filled or empty)
+	 */
+	default CompletableFuture<Map<String, PerunAttributeValue>> getResourceAttributeValuesAsync(Long resourceId,
+																							   Collection<String> attrsToFetch)
+	{
+		return CompletableFuture.completedFuture(getResourceAttributeValues(resourceId, attrsToFetch));
+	}
+
 }
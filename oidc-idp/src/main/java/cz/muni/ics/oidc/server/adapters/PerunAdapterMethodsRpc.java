@@ -11,6 +11,7 @@ import cz.muni.ics.oidc.server.connectors.Affiliation;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * Interface with specific methods that only rpc interface can execute
@@ -36,6 +37,14 @@ public interface PerunAdapterMethodsRpc {
 	 */
 	boolean groupWhereCanRegisterExists(Facility facility);
 
+	/**
+	 * Get IDs of the users who are members of the group.
+	 *
+	 * @param groupId id of group
+	 * @return Set of user IDs (filled or empty)
+	 */
+	Set<Long> getGroupMembersUserIds(Long groupId);
+
 	/**
 	 * Sets the attribute of the user.
 	 * @param userId id of user
@@ -0,0 +1,178 @@
+package cz.muni.ics.oidc.server.adapters;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Request scoped memo of the results of calls to PerunAdapter. While the memo is open for the current thread
+ * (i.e. during processing of the HTTP request), each call of the same method with the same arguments reaches
+ * Perun at most once, the following calls return the remembered result. Collections and maps (also those inside
+ * futures) are remembered and returned as shallow copies, so the callers modifying the result do not affect
+ * each other. Collection and map arguments are copied into the key as well.
+ *
+ * @see cz.muni.ics.oidc.aop.PerunAdapterMemoAspect
+ * @see cz.muni.ics.oidc.server.filters.impl.PerunAdapterMemoFilter
+ *
+ * @author Pavol Pluta <pavol.pluta1@gmail.com>
+ */
+public class PerunAdapterRequestMemo {
+
+	private static final Logger log = LoggerFactory.getLogger(PerunAdapterRequestMemo.class);
+
+	private static final Object NULL = new Object();
+
+	private final ThreadLocal<RequestMemo> memo = new ThreadLocal<>();
+	private boolean enabled = true;
+
+	private final AtomicLong requests = new AtomicLong();
+	private final AtomicLong calls = new AtomicLong();
+	private final AtomicLong savedCalls = new AtomicLong();
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	/**
+	 * Open memo for the current thread. Does nothing if the memo is disabled or already open.
+	 * @return TRUE if the memo has been opened by this call and should be closed by the caller, FALSE otherwise.
+	 */
+	public boolean open() {
+		if (!enabled || memo.get() != null) {
+			return false;
+		}
+		memo.set(new RequestMemo());
+		return true;
+	}
+
+	/**
+	 * Close memo of the current thread and forget the remembered results.
+	 */
+	public void close() {
+		RequestMemo requestMemo = memo.get();
+		if (requestMemo == null) {
+			return;
+		}
+		memo.remove();
+		requests.incrementAndGet();
+		if (requestMemo.saved > 0) {
+			log.debug("memo saved {} of {} calls to Perun in the request", requestMemo.saved,
+					requestMemo.saved + requestMemo.results.size());
+		}
+	}
+
+	/**
+	 * Get remembered result of the call.
+	 * @param method Identifier of the method.
+	 * @param args Arguments of the call.
+	 * @param call Call to be executed if the result is not remembered.
+	 * @return Result of the call.
+	 * @throws Throwable exception thrown by the call (such calls are not remembered).
+	 */
+	public Object get(String method, Object[] args, MemoizedCall call) throws Throwable {
+		RequestMemo requestMemo = memo.get();
+		if (requestMemo == null) {
+			return call.proceed();
+		}
+
+		CallKey key = new CallKey(method, args);
+		Object result = requestMemo.results.get(key);
+		if (result != null) {
+			requestMemo.saved++;
+			savedCalls.incrementAndGet();
+			log.trace("{} - returning remembered result", method);
+			return result == NULL ? null : copy(result);
+		}
+
+		calls.incrementAndGet();
+		result = call.proceed();
+		requestMemo.results.put(key, result == null ? NULL : copy(result));
+		return result;
+	}
+
+	/**
+	 * Get statistics of the memo.
+	 * @return Map of statistics.
+	 */
+	public Map<String, Long> getStats() {
+		Map<String, Long> stats = new LinkedHashMap<>();
+		stats.put("requestCount", requests.get());
+		stats.put("callCount", calls.get());
+		stats.put("savedCallCount", savedCalls.get());
+		return stats;
+	}
+
+	@FunctionalInterface
+	public interface MemoizedCall {
+		Object proceed() throws Throwable;
+	}
+
+	/**
+	 * Make shallow copy of the mutable collection or map, other objects are returned as they are.
+	 */
+	private static Object copy(Object value) {
+		if (value instanceof Map) {
+			return new LinkedHashMap<>((Map<?, ?>) value);
+		} else if (value instanceof Set) {
+			return new LinkedHashSet<>((Set<?>) value);
+		} else if (value instanceof Collection) {
+			return new ArrayList<>((Collection<?>) value);
+		} else if (value instanceof CompletableFuture) {
+			return ((CompletableFuture<?>) value).thenApply(PerunAdapterRequestMemo::copy);
+		}
+		return value;
+	}
+
+	private static class RequestMemo {
+		private final Map<CallKey, Object> results = new HashMap<>();
+		private long saved = 0;
+	}
+
+	private static class CallKey {
+		private final String method;
+		private final List<Object> args;
+
+		CallKey(String method, Object[] args) {
+			this.method = method;
+			if (args == null) {
+				this.args = null;
+			} else {
+				// arguments might be modified by the caller after the call
+				this.args = new ArrayList<>(args.length);
+				for (Object arg : args) {
+					this.args.add(copy(arg));
+				}
+			}
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) return true;
+			if (o == null || getClass() != o.getClass()) return false;
+			CallKey callKey = (CallKey) o;
+			return Objects.equals(method, callKey.method) &&
+					Objects.equals(args, callKey.args);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(method, args);
+		}
+	}
+
+}
@@ -0,0 +1,163 @@
+package cz.muni.ics.oidc.server.adapters;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import cz.muni.ics.oidc.models.Group;
+import cz.muni.ics.oidc.models.Vo;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Cache of rarely changing metadata (VOs and groups) shared by the adapters. VOs are kept by ID and by short name,
+ * groups by ID. Objects not found in Perun (NULL) are not cached. TTL of 0 disables the cache.
+ * Changed groups are dropped by UserInfoChangeEventConsumer before their TTL passes.
+ *
+ * @author Pavol Pluta <pavol.pluta1@gmail.com>
+ */
+public class PerunMetadataCache {
+
+	private final Cache<Long, Vo> vosById;
+	private final Cache<String, Vo> vosByShortName;
+	private final Cache<Long, Group> groupsById;
+
+	public PerunMetadataCache(long maxSize, long ttlSecs) {
+		if (ttlSecs > 0) {
+			this.vosById = build(maxSize, ttlSecs);
+			this.vosByShortName = build(maxSize, ttlSecs);
+			this.groupsById = build(maxSize, ttlSecs);
+		} else {
+			this.vosById = null;
+			this.vosByShortName = null;
+			this.groupsById = null;
+		}
+	}
+
+	/**
+	 * Get VO by ID.
+	 * @param id ID of the VO.
+	 * @param loader Function fetching the VO from Perun.
+	 * @return Found VO or NULL.
+	 */
+	public Vo getVoById(Long id, Function<Long, Vo> loader) {
+		if (vosById == null || id == null) {
+			return loader.apply(id);
+		}
+
+		Vo vo = vosById.getIfPresent(id);
+		if (vo == null) {
+			vo = loader.apply(id);
+			putVo(vo);
+		}
+		return vo;
+	}
+
+	/**
+	 * Get VO by short name.
+	 * @param shortName Short name of the VO.
+	 * @param loader Function fetching the VO from Perun.
+	 * @return Found VO or NULL.
+	 */
+	public Vo getVoByShortName(String shortName, Function<String, Vo> loader) {
+		if (vosByShortName == null || shortName == null) {
+			return loader.apply(shortName);
+		}
+
+		Vo vo = vosByShortName.getIfPresent(shortName);
+		if (vo == null) {
+			vo = loader.apply(shortName);
+			putVo(vo);
+		}
+		return vo;
+	}
+
+	/**
+	 * Get group by ID.
+	 * @param id ID of the group.
+	 * @param loader Function fetching the group from Perun.
+	 * @return Found group or NULL.
+	 */
+	public Group getGroupById(Long id, Function<Long, Group> loader) {
+		if (groupsById == null || id == null) {
+			return loader.apply(id);
+		}
+
+		Group group = groupsById.getIfPresent(id);
+		if (group == null) {
+			group = loader.apply(id);
+			if (group != null) {
+				groupsById.put(id, group);
+			}
+		}
+		return group;
+	}
+
+	/**
+	 * Forget the group.
+	 * @param id ID of the group.
+	 */
+	public void invalidateGroup(long id) {
+		if (groupsById != null) {
+			groupsById.invalidate(id);
+		}
+	}
+
+	/**
+	 * Forget all cached objects.
+	 */
+	public void invalidateAll() {
+		if (vosById != null) {
+			vosById.invalidateAll();
+			vosByShortName.invalidateAll();
+			groupsById.invalidateAll();
+		}
+	}
+
+	/**
+	 * Get statistics of the cache.
+	 * @return Map of statistics, empty if the cache is disabled.
+	 */
+	public Map<String, Object> getStats() {
+		Map<String, Object> stats = new LinkedHashMap<>();
+		if (vosById != null) {
+			stats.put("vosById", stats(vosById));
+			stats.put("vosByShortName", stats(vosByShortName));
+			stats.put("groupsById", stats(groupsById));
+		}
+		return stats;
+	}
+
+	private void putVo(Vo vo) {
+		if (vo == null) {
+			return;
+		}
+		if (vo.getId() != null) {
+			vosById.put(vo.getId(), vo);
+		}
+		if (vo.getShortName() != null) {
+			vosByShortName.put(vo.getShortName(), vo);
+		}
+	}
+
+	private <K, V> Cache<K, V> build(long maxSize, long ttlSecs) {
+		return CacheBuilder.newBuilder()
+				.maximumSize(maxSize)
+				.expireAfterWrite(ttlSecs, TimeUnit.SECONDS)
+				.recordStats()
+				.build();
+	}
+
+	private Map<String, Object> stats(Cache<?, ?> cache) {
+		CacheStats cacheStats = cache.stats();
+		Map<String, Object> stats = new LinkedHashMap<>();
+		stats.put("size", cache.size());
+		stats.put("hitCount", cacheStats.hitCount());
+		stats.put("missCount", cacheStats.missCount());
+		stats.put("hitRate", cacheStats.hitRate());
+		return stats;
+	}
+
+}
@@ -0,0 +1,14 @@
+package cz.muni.ics.oidc.server.adapters;
+
+/**
+ * Thrown when the call cannot be made because circuit breakers of all the adapters that could handle it are open.
+ *
+ * @author Pavol Pluta <pavol.pluta1@gmail.com>
+ */
+public class PerunUnavailableException extends RuntimeException {
+
+	public PerunUnavailableException(String message) {
+		super(message);
+	}
+
+}
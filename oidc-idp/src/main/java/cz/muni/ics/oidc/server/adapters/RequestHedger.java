@@ -0,0 +1,201 @@
+package cz.muni.ics.oidc.server.adapters;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Hedges calls to Perun. The call is made by the primary adapter and if it does not answer within the configured
+ * percentile of its recent latency, the same call is made by the other adapter. The first successful answer wins,
+ * the call fails only when both adapters fail (with the exception of the primary adapter).
+ *
+ * Calls are not hedged until enough latencies of the primary adapter are recorded. The call that has lost
+ * is cancelled (interrupted if it is already running). When all threads are busy and the queue is full,
+ * the call is made by the calling thread.
+ *
+ * The calls are made with the MDC of the calling thread. The request memo does not have to be propagated,
+ * as it is applied by PerunAdapterImpl around the whole hedged call in the calling thread.
+ *
+ * @author Pavol Pluta <pavol.pluta1@gmail.com>
+ */
+public class RequestHedger {
+
+	private static final Logger log = LoggerFactory.getLogger(RequestHedger.class);
+
+	private static final int LATENCY_WINDOW_SIZE = 100;
+	private static final int MIN_RECORDED_LATENCIES = 20;
+
+	private final double percentile;
+	private final long minDelayMs;
+	private final ThreadPoolExecutor executor;
+	private final Map<String, LatencyWindow> latencies = new ConcurrentHashMap<>();
+
+	private final AtomicLong callCount = new AtomicLong();
+	private final AtomicLong hedgedCount = new AtomicLong();
+	private final AtomicLong hedgeWonCount = new AtomicLong();
+
+	/**
+	 * Create hedger.
+	 * @param percentile Percentile (0-100) of the recent latency of the primary adapter after which the call is hedged.
+	 * @param minDelayMs Minimum number of milliseconds to wait for the primary adapter.
+	 * @param threads Number of threads making the calls.
+	 */
+	public RequestHedger(double percentile, long minDelayMs, int threads) {
+		this.percentile = percentile;
+		this.minDelayMs = minDelayMs;
+		int poolSize = Math.max(2, threads);
+		// when the queue is full, the call is made by the calling thread
+		this.executor = new ThreadPoolExecutor(poolSize, poolSize, 60L, TimeUnit.SECONDS,
+				new ArrayBlockingQueue<>(poolSize * 10),
+				new ThreadFactoryBuilder().setNameFormat("perun-hedging-%d").setDaemon(true).build(),
+				new ThreadPoolExecutor.CallerRunsPolicy());
+		this.executor.allowCoreThreadTimeOut(true);
+	}
+
+	public void shutdown() {
+		executor.shutdownNow();
+	}
+
+	/**
+	 * Make the call, hedged by the other adapter if the primary one is slow.
+	 * @param primaryName Name of the primary adapter (latencies are tracked by the name).
+	 * @param primary Call made by the primary adapter.
+	 * @param hedge Same call made by the other adapter.
+	 * @return Result of the first successful call.
+	 */
+	public <T> T call(String primaryName, Supplier<T> primary, Supplier<T> hedge) {
+		callCount.incrementAndGet();
+		LatencyWindow window = latencies.computeIfAbsent(primaryName, k -> new LatencyWindow(LATENCY_WINDOW_SIZE));
+		if (window.getRecorded() < MIN_RECORDED_LATENCIES) {
+			return timed(window, primary);
+		}
+
+		long delayMs = Math.max(minDelayMs, window.getPercentile(percentile));
+		Map<String, String> mdc = MDC.getCopyOfContextMap();
+		CompletableFuture<T> primaryFuture = new CompletableFuture<>();
+		Future<?> primaryTask = submit(primaryFuture, () -> timed(window, primary), mdc);
+		try {
+			return primaryFuture.get(delayMs, TimeUnit.MILLISECONDS);
+		} catch (TimeoutException e) {
+			log.debug("{} has not answered within {} ms, hedging the call", primaryName, delayMs);
+		} catch (ExecutionException e) {
+			throw propagate(e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("interrupted while waiting for " + primaryName, e);
+		}
+
+		hedgedCount.incrementAndGet();
+		CompletableFuture<T> hedgeFuture = new CompletableFuture<>();
+		Future<?> hedgeTask = submit(hedgeFuture, hedge, mdc);
+		CompletableFuture<T> first = new CompletableFuture<>();
+		AtomicReference<Throwable> primaryFailure = new AtomicReference<>();
+		AtomicInteger failures = new AtomicInteger();
+
+		primaryFuture.whenComplete((value, ex) -> {
+			if (ex == null) {
+				if (first.complete(value)) {
+					hedgeTask.cancel(true);
+				}
+			} else {
+				primaryFailure.set(unwrap(ex));
+				if (failures.incrementAndGet() == 2) {
+					first.completeExceptionally(primaryFailure.get());
+				}
+			}
+		});
+		hedgeFuture.whenComplete((value, ex) -> {
+			if (ex == null) {
+				if (first.complete(value)) {
+					hedgeWonCount.incrementAndGet();
+					primaryTask.cancel(true);
+				}
+			} else if (failures.incrementAndGet() == 2) {
+				first.completeExceptionally(primaryFailure.get());
+			}
+		});
+
+		try {
+			return first.join();
+		} catch (CompletionException e) {
+			throw propagate(e.getCause());
+		}
+	}
+
+	/**
+	 * Get statistics of the hedging.
+	 * @return Map of statistics.
+	 */
+	public Map<String, Object> getStats() {
+		Map<String, Object> stats = new LinkedHashMap<>();
+		stats.put("callCount", callCount.get());
+		stats.put("hedgedCount", hedgedCount.get());
+		stats.put("hedgeWonCount", hedgeWonCount.get());
+		latencies.forEach((name, window) -> stats.put(name + "DelayMs",
+				Math.max(minDelayMs, window.getPercentile(percentile))));
+		return stats;
+	}
+
+	/**
+	 * Submit the call completing the given future. The future is completed by the call, not by the task,
+	 * so the task can be cancelled without affecting the result of the other call.
+	 */
+	private <T> Future<?> submit(CompletableFuture<T> future, Supplier<T> call, Map<String, String> mdc) {
+		return executor.submit(() -> {
+			// the task might be also executed by the calling thread, so restore the original MDC afterwards
+			Map<String, String> originalMdc = MDC.getCopyOfContextMap();
+			if (mdc != null) {
+				MDC.setContextMap(mdc);
+			}
+			try {
+				future.complete(call.get());
+			} catch (Throwable ex) {
+				future.completeExceptionally(ex);
+			} finally {
+				if (originalMdc != null) {
+					MDC.setContextMap(originalMdc);
+				} else {
+					MDC.clear();
+				}
+			}
+		});
+	}
+
+	private <T> T timed(LatencyWindow window, Supplier<T> call) {
+		long start = System.currentTimeMillis();
+		T result = call.get();
+		window.record(System.currentTimeMillis() - start);
+		return result;
+	}
+
+	private Throwable unwrap(Throwable ex) {
+		return ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+	}
+
+	private RuntimeException propagate(Throwable ex) {
+		if (ex instanceof RuntimeException) {
+			return (RuntimeException) ex;
+		} else if (ex instanceof Error) {
+			throw (Error) ex;
+		}
+		return new IllegalStateException(ex);
+	}
+
+}
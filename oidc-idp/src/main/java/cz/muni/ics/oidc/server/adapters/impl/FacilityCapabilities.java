@@ -0,0 +1,67 @@
+package cz.muni.ics.oidc.server.adapters.impl;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Capabilities released by the facility, resolved at once for all resources of the facility.
+ * Keeps table of unique group names (groups assigned to the resources having some capabilities)
+ * and capabilities of the resources they are assigned to, so capabilities of the user are computed
+ * from the names of his groups without calling Perun.
+ *
+ * @author Pavol Pluta <pavol.pluta1@gmail.com>
+ */
+public class FacilityCapabilities {
+
+	private final Map<String, Set<String>> groupCapabilities = new HashMap<>();
+	private final Set<String> resourceGroupNames = new HashSet<>();
+	private final Set<Long> resourceGroupIds = new HashSet<>();
+	private final Set<String> facilityCapabilities = new HashSet<>();
+
+	synchronized void addResourceGroup(Long groupId, String groupName, String uniqueGroupName,
+									   Collection<String> capabilities)
+	{
+		resourceGroupIds.add(groupId);
+		resourceGroupNames.add(groupName);
+		groupCapabilities.computeIfAbsent(uniqueGroupName, k -> new HashSet<>()).addAll(capabilities);
+	}
+
+	synchronized void addFacilityCapabilities(Collection<String> capabilities) {
+		facilityCapabilities.addAll(capabilities);
+	}
+
+	/**
+	 * Check if the table contains the group.
+	 * @param groupId ID of the group.
+	 * @return TRUE if the group is assigned to some resource having capabilities, FALSE otherwise.
+	 */
+	public synchronized boolean containsGroup(long groupId) {
+		return resourceGroupIds.contains(groupId);
+	}
+
+	/**
+	 * Get capabilities for the member of the given groups.
+	 * @param groupNames Unique names of the groups (prefixed with VO short name).
+	 * @return Set of capabilities (filled or empty).
+	 */
+	public synchronized Set<String> getCapabilities(Set<String> groupNames) {
+		Set<String> capabilities = new HashSet<>();
+		for (String groupName : groupNames) {
+			Set<String> found = groupCapabilities.get(groupName);
+			if (found != null) {
+				capabilities.addAll(found);
+			}
+		}
+
+		if (!Collections.disjoint(groupNames, resourceGroupNames)) {
+			capabilities.addAll(facilityCapabilities);
+		}
+
+		return capabilities;
+	}
+
+}
@@ -7,13 +7,40 @@ import cz.muni.ics.oidc.models.PerunUser;
 import cz.muni.ics.oidc.models.Resource;
 import cz.muni.ics.oidc.models.Vo;
 import cz.muni.ics.oidc.server.PerunPrincipal;
+import cz.muni.ics.oidc.server.adapters.AdaptiveRouter;
+import cz.muni.ics.oidc.server.adapters.CircuitBreaker;
+import cz.muni.ics.oidc.server.adapters.FacilityIndex;
 import cz.muni.ics.oidc.server.adapters.PerunAdapter;
+import cz.muni.ics.oidc.server.adapters.PerunAdapterMethods;
+import cz.muni.ics.oidc.server.adapters.PerunUnavailableException;
+import cz.muni.ics.oidc.server.adapters.RequestHedger;
+import cz.muni.ics.oidc.server.configurations.CircuitBreakerConfig;
+import cz.muni.ics.oidc.server.configurations.FacilityAttrsConfig;
 import cz.muni.ics.oidc.server.connectors.Affiliation;
-
+import cz.muni.ics.oidc.server.connectors.PerunConnectorRpc;
+import org.mitre.oauth2.model.ClientDetailsEntity;
+import org.mitre.oauth2.service.ClientDetailsEntityService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.util.StringUtils;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.lang.reflect.Method;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 /**
  * Basic adapter. This one should be used across the application to call the methods that are common
@@ -23,109 +50,256 @@ import java.util.Set;
  */
 public class PerunAdapterImpl extends PerunAdapter {
 
-    @Override
-    public PerunUser getPreauthenticatedUserId(PerunPrincipal perunPrincipal) {
-        try {
-            return this.getAdapterPrimary().getPreauthenticatedUserId(perunPrincipal);
-        } catch (UnsupportedOperationException e) {
-            if (this.isCallFallback()) {
-                return this.getAdapterFallback().getPreauthenticatedUserId(perunPrincipal);
-            } else {
-                throw e;
+    private static final Logger log = LoggerFactory.getLogger(PerunAdapterImpl.class);
+
+    @Autowired
+    private ClientDetailsEntityService clientService;
+
+    private FacilityAttrsConfig facilityAttrsConfig;
+    private boolean facilityIndexEnabled = false;
+    private long facilityIndexRefreshSecs = 600;
+    private long facilityIndexMaxAgeSecs = 3600;
+    private long facilityIndexNegativeTtlSecs = 300;
+    private FacilityIndex facilityIndex;
+    private CircuitBreakerConfig circuitBreakerConfig;
+    private PerunAdapterMethods adapterFailover;
+    private final Map<PerunAdapterMethods, CircuitBreaker> circuitBreakers = new IdentityHashMap<>();
+    private final Map<String, PerunAdapterMethods> methodBindings = new ConcurrentHashMap<>();
+    private boolean hedgingEnabled = false;
+    private double hedgingPercentile = 95;
+    private long hedgingMinDelayMs = 50;
+    private int hedgingThreads = 20;
+    private RequestHedger requestHedger;
+    private boolean adaptiveRoutingEnabled = false;
+    private double adaptiveRoutingAlpha = 0.2;
+    private double adaptiveRoutingExplorationRate = 0.05;
+    private AdaptiveRouter adaptiveRouter;
+
+    public void setFacilityAttrsConfig(FacilityAttrsConfig facilityAttrsConfig) {
+        this.facilityAttrsConfig = facilityAttrsConfig;
+    }
+
+    public void setFacilityIndexEnabled(boolean facilityIndexEnabled) {
+        this.facilityIndexEnabled = facilityIndexEnabled;
+    }
+
+    public void setFacilityIndexRefreshSecs(long facilityIndexRefreshSecs) {
+        this.facilityIndexRefreshSecs = facilityIndexRefreshSecs;
+    }
+
+    public void setFacilityIndexMaxAgeSecs(long facilityIndexMaxAgeSecs) {
+        this.facilityIndexMaxAgeSecs = facilityIndexMaxAgeSecs;
+    }
+
+    public void setFacilityIndexNegativeTtlSecs(long facilityIndexNegativeTtlSecs) {
+        this.facilityIndexNegativeTtlSecs = facilityIndexNegativeTtlSecs;
+    }
+
+    public void setCircuitBreakerConfig(CircuitBreakerConfig circuitBreakerConfig) {
+        this.circuitBreakerConfig = circuitBreakerConfig;
+    }
+
+    public void setAdapterFailover(PerunAdapterMethods adapterFailover) {
+        this.adapterFailover = adapterFailover;
+    }
+
+    public void setHedgingEnabled(boolean hedgingEnabled) {
+        this.hedgingEnabled = hedgingEnabled;
+    }
+
+    public void setHedgingPercentile(double hedgingPercentile) {
+        this.hedgingPercentile = hedgingPercentile;
+    }
+
+    public void setHedgingMinDelayMs(long hedgingMinDelayMs) {
+        this.hedgingMinDelayMs = hedgingMinDelayMs;
+    }
+
+    public void setHedgingThreads(int hedgingThreads) {
+        this.hedgingThreads = hedgingThreads;
+    }
+
+    public void setAdaptiveRoutingEnabled(boolean adaptiveRoutingEnabled) {
+        this.adaptiveRoutingEnabled = adaptiveRoutingEnabled;
+    }
+
+    public void setAdaptiveRoutingAlpha(double adaptiveRoutingAlpha) {
+        this.adaptiveRoutingAlpha = adaptiveRoutingAlpha;
+    }
+
+    public void setAdaptiveRoutingExplorationRate(double adaptiveRoutingExplorationRate) {
+        this.adaptiveRoutingExplorationRate = adaptiveRoutingExplorationRate;
+    }
+
+    @PostConstruct
+    public void postInit() {
+        for (Method method : PerunAdapterMethods.class.getMethods()) {
+            methodBindings.computeIfAbsent(method.getName(), this::bindMethod);
+        }
+
+        if (circuitBreakerConfig != null && circuitBreakerConfig.isEnabled()) {
+            for (PerunAdapterMethods adapter : new PerunAdapterMethods[] {
+                    this.getAdapterPrimary(), this.getAdapterFallback(), adapterFailover }) {
+                if (adapter != null) {
+                    circuitBreakers.computeIfAbsent(adapter, a -> new CircuitBreaker(getAdapterName(a),
+                            circuitBreakerConfig));
+                }
             }
+            log.info("circuit breakers enabled for {} with {}", circuitBreakers.size(), circuitBreakerConfig);
+        }
+
+        if (hedgingEnabled && adapterFailover != null && adapterFailover != this.getAdapterPrimary()) {
+            requestHedger = new RequestHedger(hedgingPercentile, hedgingMinDelayMs, hedgingThreads);
+            log.info("calls of {} are hedged by {} after {}th percentile of latency (at least {} ms)",
+                    getAdapterName(this.getAdapterPrimary()), getAdapterName(adapterFailover), hedgingPercentile,
+                    hedgingMinDelayMs);
+        }
+
+        if (adaptiveRoutingEnabled && adapterFailover != null && adapterFailover != this.getAdapterPrimary()) {
+            adaptiveRouter = new AdaptiveRouter(adaptiveRoutingAlpha, adaptiveRoutingExplorationRate);
+            log.info("calls are routed between {} and {} by their performance",
+                    getAdapterName(this.getAdapterPrimary()), getAdapterName(adapterFailover));
+        }
+
+        if (!facilityIndexEnabled) {
+            return;
+        }
+
+        Set<String> attrNames = new HashSet<>();
+        if (facilityAttrsConfig != null) {
+            attrNames.addAll(facilityAttrsConfig.getMembershipAttrNames());
+            attrNames.addAll(facilityAttrsConfig.getFilterAttrNames());
+            if (facilityAttrsConfig.getTestSpAttr() != null) {
+                attrNames.add(facilityAttrsConfig.getTestSpAttr());
+            }
+        }
+        facilityIndex = new FacilityIndex(this::fetchFacilityByClientId, this::fetchFacilityAttributeValues,
+                this::getRegisteredClientIds, attrNames, facilityIndexRefreshSecs, facilityIndexMaxAgeSecs,
+                facilityIndexNegativeTtlSecs);
+        facilityIndex.start();
+    }
+
+    /**
+     * Get adapter implementing the method - the primary one, or the fallback one if the primary does not support it.
+     */
+    private PerunAdapterMethods bindMethod(String method) {
+        PerunAdapterMethods primary = this.getAdapterPrimary();
+        if (primary.supports(method)) {
+            return primary;
+        }
+        PerunAdapterMethods fallback = this.getAdapterFallback();
+        if (this.isCallFallback() && fallback != null && fallback.supports(method)) {
+            log.info("{} is not supported by {}, bound to {}", method, getAdapterName(primary),
+                    getAdapterName(fallback));
+            return fallback;
         }
+        log.warn("{} is not supported by {} and cannot be called by fallback", method, getAdapterName(primary));
+        return primary;
+    }
+
+    @PreDestroy
+    public void preDestroy() {
+        if (facilityIndex != null) {
+            facilityIndex.stop();
+        }
+        if (requestHedger != null) {
+            requestHedger.shutdown();
+        }
+    }
+
+    /**
+     * Forget indexed data of the changed facility.
+     * @param facilityId ID of the facility.
+     */
+    public void invalidateFacility(long facilityId) {
+        if (facilityIndex != null) {
+            facilityIndex.invalidateFacility(facilityId);
+        }
+    }
+
+    /**
+     * Get statistics of the facility index.
+     * @return Map of statistics, empty if the index is disabled.
+     */
+    public Map<String, Long> getFacilityIndexStats() {
+        return facilityIndex != null ? facilityIndex.getStats() : Collections.emptyMap();
+    }
+
+    /**
+     * Get statistics of the circuit breakers.
+     * @return Map of statistics per adapter, empty if the breakers are disabled.
+     */
+    public Map<String, Object> getCircuitBreakerStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        circuitBreakers.forEach((adapter, breaker) -> stats.put(getAdapterName(adapter), breaker.getStats()));
+        return stats;
+    }
+
+    /**
+     * Get statistics of the hedged calls.
+     * @return Map of statistics, empty if the hedging is disabled.
+     */
+    public Map<String, Object> getHedgingStats() {
+        return requestHedger != null ? requestHedger.getStats() : Collections.emptyMap();
+    }
+
+    /**
+     * Get statistics of the adaptive routing.
+     * @return Map of statistics per method and adapter, empty if the adaptive routing is disabled.
+     */
+    public Map<String, Object> getRoutingStats() {
+        return adaptiveRouter != null ? adaptiveRouter.getStats() : Collections.emptyMap();
+    }
+
+    @Override
+    public PerunUser getPreauthenticatedUserId(PerunPrincipal perunPrincipal) {
+        return call("getPreauthenticatedUserId", adapter -> adapter.getPreauthenticatedUserId(perunPrincipal));
     }
 
     @Override
     public Facility getFacilityByClientId(String clientId) {
-        try {
-            return this.getAdapterPrimary().getFacilityByClientId(clientId);
-        } catch (UnsupportedOperationException e) {
-            if (this.isCallFallback()) {
-                return this.getAdapterFallback().getFacilityByClientId(clientId);
-            } else {
-                throw e;
-            }
+        if (facilityIndex != null && StringUtils.hasText(clientId)) {
+            return facilityIndex.getFacility(clientId);
         }
+        return fetchFacilityByClientId(clientId);
+    }
+
+    private Facility fetchFacilityByClientId(String clientId) {
+        return hedge("getFacilityByClientId", adapter -> adapter.getFacilityByClientId(clientId));
     }
 
     @Override
     public boolean isMembershipCheckEnabledOnFacility(Facility facility) {
-        try {
-            return this.getAdapterPrimary().isMembershipCheckEnabledOnFacility(facility);
-        } catch (UnsupportedOperationException e) {
-            if (this.isCallFallback()) {
-                return this.getAdapterFallback().isMembershipCheckEnabledOnFacility(facility);
-            } else {
-                throw e;
-            }
-        }
+        return call("isMembershipCheckEnabledOnFacility", adapter ->
+                adapter.isMembershipCheckEnabledOnFacility(facility));
     }
 
     @Override
     public boolean canUserAccessBasedOnMembership(Facility facility, Long userId) {
-        try {
-            return this.getAdapterPrimary().canUserAccessBasedOnMembership(facility, userId);
-        } catch (UnsupportedOperationException e) {
-            if (this.isCallFallback()) {
-                return this.getAdapterFallback().canUserAccessBasedOnMembership(facility, userId);
-            } else {
-                throw e;
-            }
-        }
+        return call("canUserAccessBasedOnMembership", adapter ->
+                adapter.canUserAccessBasedOnMembership(facility, userId));
     }
 
 
     @Override
     public boolean isUserInGroup(Long userId, Long groupId) {
-        try {
-            return this.getAdapterPrimary().isUserInGroup(userId, groupId);
-        } catch (UnsupportedOperationException e) {
-            if (this.isCallFallback()) {
-                return this.getAdapterFallback().isUserInGroup(userId, groupId);
-            } else {
-                throw e;
-            }
-        }
+        return call("isUserInGroup", adapter -> adapter.isUserInGroup(userId, groupId));
     }
 
     @Override
     public List<Affiliation> getGroupAffiliations(Long userId, String groupAffiliationsAttr) {
-        try {
-            return this.getAdapterPrimary().getGroupAffiliations(userId, groupAffiliationsAttr);
-        } catch (UnsupportedOperationException e) {
-            if (this.isCallFallback()) {
-                return this.getAdapterFallback().getGroupAffiliations(userId, groupAffiliationsAttr);
-            } else {
-                throw e;
-            }
-        }
+        return call("getGroupAffiliations", adapter -> adapter.getGroupAffiliations(userId, groupAffiliationsAttr));
     }
 
     @Override
     public List<String> getGroupsAssignedToResourcesWithUniqueNames(Facility facility) {
-        try {
-            return this.getAdapterPrimary().getGroupsAssignedToResourcesWithUniqueNames(facility);
-        } catch (UnsupportedOperationException e) {
-            if (this.isCallFallback()) {
-                return this.getAdapterFallback().getGroupsAssignedToResourcesWithUniqueNames(facility);
-            } else {
-                throw e;
-            }
-        }
+        return call("getGroupsAssignedToResourcesWithUniqueNames", adapter ->
+                adapter.getGroupsAssignedToResourcesWithUniqueNames(facility));
     }
 
     @Override
     public Vo getVoByShortName(String shortName) {
-        try {
-            return this.getAdapterPrimary().getVoByShortName(shortName);
-        } catch (UnsupportedOperationException e) {
-            if (this.isCallFallback()) {
-                return this.getAdapterFallback().getVoByShortName(shortName);
-            } else {
-                throw e;
-            }
-        }
+        return call("getVoByShortName", adapter -> adapter.getVoByShortName(shortName));
     }
 
     @Override
@@ -135,15 +309,7 @@ public class PerunAdapterImpl extends PerunAdapter {
 
     @Override
     public Map<String, PerunAttributeValue> getUserAttributeValues(Long userId, Collection<String> attrsToFetch) {
-        try {
-            return this.getAdapterPrimary().getUserAttributeValues(userId, attrsToFetch);
-        } catch (UnsupportedOperationException e) {
-            if (this.isCallFallback()) {
-                return this.getAdapterFallback().getUserAttributeValues(userId, attrsToFetch);
-            } else {
-                throw e;
-            }
-        }
+        return hedge("getUserAttributeValues", adapter -> adapter.getUserAttributeValues(userId, attrsToFetch));
     }
 
     @Override
@@ -153,15 +319,7 @@ public class PerunAdapterImpl extends PerunAdapter {
 
     @Override
     public PerunAttributeValue getUserAttributeValue(Long userId, String attrToFetch) {
-        try {
-            return this.getAdapterPrimary().getUserAttributeValue(userId, attrToFetch);
-        } catch (UnsupportedOperationException e) {
-            if (this.isCallFallback()) {
-                return this.getAdapterFallback().getUserAttributeValue(userId, attrToFetch);
-            } else {
-                throw e;
-            }
-        }
+        return hedge("getUserAttributeValue", adapter -> adapter.getUserAttributeValue(userId, attrToFetch));
     }
 
     @Override
@@ -171,15 +329,18 @@ public class PerunAdapterImpl extends PerunAdapter {
 
     @Override
     public Map<String, PerunAttributeValue> getFacilityAttributeValues(Long facilityId, Collection<String> attrsToFetch) {
-        try {
-            return this.getAdapterPrimary().getFacilityAttributeValues(facilityId, attrsToFetch);
-        } catch (UnsupportedOperationException e) {
-            if (this.isCallFallback()) {
-                return this.getAdapterFallback().getFacilityAttributeValues(facilityId, attrsToFetch);
-            } else {
-                throw e;
+        if (facilityIndex != null) {
+            Map<String, PerunAttributeValue> indexed = facilityIndex.getAttributeValues(facilityId, attrsToFetch);
+            if (indexed != null) {
+                return indexed;
             }
         }
+        return fetchFacilityAttributeValues(facilityId, attrsToFetch);
+    }
+
+    private Map<String, PerunAttributeValue> fetchFacilityAttributeValues(Long facilityId, Collection<String> attrsToFetch) {
+        return call("getFacilityAttributeValues", adapter ->
+                adapter.getFacilityAttributeValues(facilityId, attrsToFetch));
     }
 
     @Override
@@ -189,15 +350,14 @@ public class PerunAdapterImpl extends PerunAdapter {
 
     @Override
     public PerunAttributeValue getFacilityAttributeValue(Long facilityId, String attrToFetch) {
-        try {
-            return this.getAdapterPrimary().getFacilityAttributeValue(facilityId, attrToFetch);
-        } catch (UnsupportedOperationException e) {
-            if (this.isCallFallback()) {
-                return this.getAdapterFallback().getFacilityAttributeValue(facilityId, attrToFetch);
-            } else {
-                throw e;
+        if (facilityIndex != null) {
+            Map<String, PerunAttributeValue> indexed = facilityIndex.getAttributeValues(facilityId,
+                    Collections.singleton(attrToFetch));
+            if (indexed != null) {
+                return indexed.get(attrToFetch);
             }
         }
+        return call("getFacilityAttributeValue", adapter -> adapter.getFacilityAttributeValue(facilityId, attrToFetch));
     }
 
     @Override
@@ -207,15 +367,7 @@ public class PerunAdapterImpl extends PerunAdapter {
 
     @Override
     public Map<String, PerunAttributeValue> getVoAttributeValues(Long voId, Collection<String> attrsToFetch) {
-        try {
-            return this.getAdapterPrimary().getVoAttributeValues(voId, attrsToFetch);
-        } catch (UnsupportedOperationException e) {
-            if (this.isCallFallback()) {
-                return this.getAdapterFallback().getVoAttributeValues(voId, attrsToFetch);
-            } else {
-                throw e;
-            }
-        }
+        return call("getVoAttributeValues", adapter -> adapter.getVoAttributeValues(voId, attrsToFetch));
     }
 
     @Override
@@ -225,15 +377,7 @@ public class PerunAdapterImpl extends PerunAdapter {
 
     @Override
     public PerunAttributeValue getVoAttributeValue(Long voId, String attrToFetch) {
-        try {
-            return this.getAdapterPrimary().getVoAttributeValue(voId, attrToFetch);
-        } catch (UnsupportedOperationException e) {
-            if (this.isCallFallback()) {
-                return this.getAdapterFallback().getVoAttributeValue(voId, attrToFetch);
-            } else {
-                throw e;
-            }
-        }
+        return call("getVoAttributeValue", adapter -> adapter.getVoAttributeValue(voId, attrToFetch));
     }
 
     @Override
@@ -243,15 +387,7 @@ public class PerunAdapterImpl extends PerunAdapter {
 
     @Override
     public Map<String, PerunAttributeValue> getGroupAttributeValues(Long groupId, Collection<String> attrsToFetch) {
-        try {
-            return this.getAdapterPrimary().getGroupAttributeValues(groupId, attrsToFetch);
-        } catch (UnsupportedOperationException e) {
-            if (this.isCallFallback()) {
-                return this.getAdapterFallback().getGroupAttributeValues(groupId, attrsToFetch);
-            } else {
-                throw e;
-            }
-        }
+        return call("getGroupAttributeValues", adapter -> adapter.getGroupAttributeValues(groupId, attrsToFetch));
     }
 
     @Override
@@ -261,15 +397,7 @@ public class PerunAdapterImpl extends PerunAdapter {
 
     @Override
     public PerunAttributeValue getGroupAttributeValue(Long groupId, String attrToFetch) {
-        try {
-            return this.getAdapterPrimary().getGroupAttributeValue(groupId, attrToFetch);
-        } catch (UnsupportedOperationException e) {
-            if (this.isCallFallback()) {
-                return this.getAdapterFallback().getGroupAttributeValue(groupId, attrToFetch);
-            } else {
-                throw e;
-            }
-        }
+        return call("getGroupAttributeValue", adapter -> adapter.getGroupAttributeValue(groupId, attrToFetch));
     }
 
     @Override
@@ -279,15 +407,8 @@ public class PerunAdapterImpl extends PerunAdapter {
 
     @Override
     public Map<String, PerunAttributeValue> getResourceAttributeValues(Long resourceId, Collection<String> attrsToFetch) {
-        try {
-            return this.getAdapterPrimary().getResourceAttributeValues(resourceId, attrsToFetch);
-        } catch (UnsupportedOperationException e) {
-            if (this.isCallFallback()) {
-                return this.getAdapterFallback().getResourceAttributeValues(resourceId, attrsToFetch);
-            } else {
-                throw e;
-            }
-        }
+        return call("getResourceAttributeValues", adapter ->
+                adapter.getResourceAttributeValues(resourceId, attrsToFetch));
     }
 
     @Override
@@ -297,82 +418,324 @@ public class PerunAdapterImpl extends PerunAdapter {
 
     @Override
     public PerunAttributeValue getResourceAttributeValue(Long resourceId, String attrToFetch) {
-        try {
-            return this.getAdapterPrimary().getResourceAttributeValue(resourceId, attrToFetch);
-        } catch (UnsupportedOperationException e) {
-            if (this.isCallFallback()) {
-                return this.getAdapterFallback().getResourceAttributeValue(resourceId, attrToFetch);
-            } else {
-                throw e;
-            }
-        }
+        return call("getResourceAttributeValue", adapter -> adapter.getResourceAttributeValue(resourceId, attrToFetch));
     }
 
     @Override
     public Set<String> getCapabilities(Facility facility, Set<String> groupNames, String facilityCapabilitiesAttrName, String resourceCapabilitiesAttrName) {
-        try {
-            return this.getAdapterPrimary().getCapabilities(facility, groupNames, facilityCapabilitiesAttrName, resourceCapabilitiesAttrName);
-        } catch (UnsupportedOperationException e) {
-            if (this.isCallFallback()) {
-                return this.getAdapterFallback().getCapabilities(facility, groupNames, facilityCapabilitiesAttrName, resourceCapabilitiesAttrName);
-            } else {
-                throw e;
-            }
-        }
+        return call("getCapabilities", adapter ->
+                adapter.getCapabilities(facility, groupNames, facilityCapabilitiesAttrName,
+                        resourceCapabilitiesAttrName));
     }
 
     @Override
     public Set<String> getCapabilities(Facility facility, Map<Long, String> idToGnameMap, String facilityCapabilitiesAttrName, String resourceCapabilitiesAttrName) {
-        try {
-            return this.getAdapterPrimary().getCapabilities(facility, idToGnameMap, facilityCapabilitiesAttrName, resourceCapabilitiesAttrName);
-        } catch (UnsupportedOperationException e) {
-            if (this.isCallFallback()) {
-                return this.getAdapterFallback().getCapabilities(facility, idToGnameMap, facilityCapabilitiesAttrName, resourceCapabilitiesAttrName);
-            } else {
-                throw e;
-            }
-        }
+        return call("getCapabilities", adapter ->
+                adapter.getCapabilities(facility, idToGnameMap, facilityCapabilitiesAttrName,
+                        resourceCapabilitiesAttrName));
     }
 
     @Override
     public Set<Group> getGroupsWhereUserIsActiveWithUniqueNames(Long facilityId, Long userId) {
-        try {
-            return this.getAdapterPrimary().getGroupsWhereUserIsActiveWithUniqueNames(facilityId, userId);
-        } catch (UnsupportedOperationException e) {
-            if (this.isCallFallback()) {
-                return this.getAdapterFallback().getGroupsWhereUserIsActiveWithUniqueNames(facilityId, userId);
-            } else {
-                throw e;
+        return hedge("getGroupsWhereUserIsActiveWithUniqueNames", adapter ->
+                adapter.getGroupsWhereUserIsActiveWithUniqueNames(facilityId, userId));
+    }
+
+    @Override
+    public Set<Long> getUserGroupsIds(Long userId, Long voId) {
+        return call("getUserGroupsIds", adapter -> adapter.getUserGroupsIds(userId, voId));
+    }
+
+    @Override
+    public boolean isValidMemberInGroupsAndVos(Long userId, Set<Long> mandatoryVos, Set<Long> mandatoryGroups,
+                                               Set<Long> envVos, Set<Long> envGroups) {
+        return call("isValidMemberInGroupsAndVos", adapter ->
+                adapter.isValidMemberInGroupsAndVos(userId, mandatoryVos, mandatoryGroups, envVos, envGroups));
+    }
+
+    @Override
+    public CompletableFuture<Facility> getFacilityByClientIdAsync(String clientId) {
+        if (facilityIndex != null && StringUtils.hasText(clientId)) {
+            return CompletableFuture.completedFuture(facilityIndex.getFacility(clientId));
+        }
+        return callAsync("getFacilityByClientIdAsync", adapter -> adapter.getFacilityByClientIdAsync(clientId));
+    }
+
+    @Override
+    public CompletableFuture<Map<String, PerunAttributeValue>> getUserAttributeValuesAsync(Long userId,
+                                                                                          Collection<String> attrsToFetch)
+    {
+        return callAsync("getUserAttributeValuesAsync", adapter ->
+                adapter.getUserAttributeValuesAsync(userId, attrsToFetch));
+    }
+
+    @Override
+    public CompletableFuture<Map<String, PerunAttributeValue>> getFacilityAttributeValuesAsync(Long facilityId,
+                                                                                              Collection<String> attrsToFetch)
+    {
+        if (facilityIndex != null) {
+            Map<String, PerunAttributeValue> indexed = facilityIndex.getAttributeValues(facilityId, attrsToFetch);
+            if (indexed != null) {
+                return CompletableFuture.completedFuture(indexed);
             }
         }
+        return callAsync("getFacilityAttributeValuesAsync", adapter ->
+                adapter.getFacilityAttributeValuesAsync(facilityId, attrsToFetch));
     }
 
     @Override
-    public Set<Long> getUserGroupsIds(Long userId, Long voId) {
+    public CompletableFuture<Map<String, PerunAttributeValue>> getVoAttributeValuesAsync(Long voId,
+                                                                                        Collection<String> attrsToFetch)
+    {
+        return callAsync("getVoAttributeValuesAsync", adapter -> adapter.getVoAttributeValuesAsync(voId, attrsToFetch));
+    }
+
+    @Override
+    public CompletableFuture<Map<String, PerunAttributeValue>> getGroupAttributeValuesAsync(Long groupId,
+                                                                                           Collection<String> attrsToFetch)
+    {
+        return callAsync("getGroupAttributeValuesAsync", adapter ->
+                adapter.getGroupAttributeValuesAsync(groupId, attrsToFetch));
+    }
+
+    @Override
+    public CompletableFuture<Map<String, PerunAttributeValue>> getResourceAttributeValuesAsync(Long resourceId,
+                                                                                              Collection<String> attrsToFetch)
+    {
+        return callAsync("getResourceAttributeValuesAsync", adapter ->
+                adapter.getResourceAttributeValuesAsync(resourceId, attrsToFetch));
+    }
+
+    /**
+     * Call the primary adapter and, if it does not support the operation and fallback is enabled, the fallback one.
+     * With circuit breakers enabled, the call is routed to the failover adapter when the primary one fails
+     * or while its breaker is open. With adaptive routing enabled, the call goes first to the adapter performing
+     * better for the method.
+     */
+    private <T> T call(String method, Function<PerunAdapterMethods, T> call) {
+        return call(method, call, route(method));
+    }
+
+    private <T> T call(String method, Function<PerunAdapterMethods, T> call, PerunAdapterMethods first) {
         try {
-            return this.getAdapterPrimary().getUserGroupsIds(userId, voId);
+            return invoke(method, call, first);
         } catch (UnsupportedOperationException e) {
-            if (this.isCallFallback()) {
-                return this.getAdapterFallback().getUserGroupsIds(userId, voId);
+            PerunAdapterMethods next = getSupportingAdapter(method, first);
+            if (next != null) {
+                return invoke(method, call, next);
             } else {
                 throw e;
             }
+        } catch (RuntimeException e) {
+            PerunAdapterMethods other = getOtherAdapter(first);
+            if (!canFailover(method, first, other, e)) {
+                throw e;
+            }
+            log.debug("{} failed ({}), calling {}", getAdapterName(first), e.getMessage(), getAdapterName(other));
+            try {
+                return invoke(method, call, other);
+            } catch (UnsupportedOperationException ex) {
+                throw e;
+            }
         }
     }
 
-    @Override
-    public boolean isValidMemberInGroupsAndVos(Long userId, Set<Long> mandatoryVos, Set<Long> mandatoryGroups,
-                                               Set<Long> envVos, Set<Long> envGroups) {
+    /**
+     * Make the call by {@link #call(String, Function)}. With hedging enabled, the same call is made by the other
+     * adapter when the first one does not answer in time, the first successful answer is returned.
+     */
+    private <T> T hedge(String method, Function<PerunAdapterMethods, T> call) {
+        PerunAdapterMethods first = route(method);
+        PerunAdapterMethods other = getOtherAdapter(first);
+        if (requestHedger == null || other == null || !other.supports(method)) {
+            return call(method, call, first);
+        }
+        return requestHedger.call(getAdapterName(first), () -> call(method, call, first),
+                () -> invoke(method, call, other));
+    }
+
+    private <T> T invoke(String method, Function<PerunAdapterMethods, T> call, PerunAdapterMethods adapter) {
+        CircuitBreaker breaker = circuitBreakers.get(adapter);
+        if (breaker != null && !breaker.tryAcquire()) {
+            throw new PerunUnavailableException("circuit breaker of " + getAdapterName(adapter) + " is open");
+        } else if (breaker == null && adaptiveRouter == null) {
+            return call.apply(adapter);
+        }
+
+        long start = System.currentTimeMillis();
         try {
-            return this.getAdapterPrimary().isValidMemberInGroupsAndVos(userId, mandatoryVos, mandatoryGroups,
-                    envVos, envGroups);
-        } catch (UnsupportedOperationException e) {
-            if (this.isCallFallback()) {
-                return this.getAdapterFallback().isValidMemberInGroupsAndVos(userId, mandatoryVos, mandatoryGroups,
-                        envVos, envGroups);
+            T result = call.apply(adapter);
+            recordOutcome(method, adapter, breaker, start, null);
+            return result;
+        } catch (RuntimeException e) {
+            recordOutcome(method, adapter, breaker, start, e);
+            throw e;
+        }
+    }
+
+    /**
+     * Asynchronous variant of {@link #call(String, Function)}.
+     * Exceptions thrown synchronously by the adapters are reported through the returned future.
+     */
+    private <T> CompletableFuture<T> callAsync(String method,
+                                               Function<PerunAdapterMethods, CompletableFuture<T>> call)
+    {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        PerunAdapterMethods first = route(method);
+        invokeAsync(method, call, first).whenComplete((value, ex) -> {
+            if (ex == null) {
+                result.complete(value);
+                return;
+            }
+            Throwable cause = unwrap(ex);
+            boolean unsupported = cause instanceof UnsupportedOperationException;
+            PerunAdapterMethods next;
+            if (unsupported) {
+                next = getSupportingAdapter(method, first);
             } else {
-                throw e;
+                PerunAdapterMethods other = getOtherAdapter(first);
+                next = canFailover(method, first, other, cause) ? other : null;
+            }
+            if (next == null) {
+                result.completeExceptionally(cause);
+                return;
+            }
+            invokeAsync(method, call, next).whenComplete((nextValue, nextEx) -> {
+                if (nextEx == null) {
+                    result.complete(nextValue);
+                } else if (!unsupported && unwrap(nextEx) instanceof UnsupportedOperationException) {
+                    result.completeExceptionally(cause);
+                } else {
+                    result.completeExceptionally(unwrap(nextEx));
+                }
+            });
+        });
+        return result;
+    }
+
+    private <T> CompletableFuture<T> invokeAsync(String method,
+                                                 Function<PerunAdapterMethods, CompletableFuture<T>> call,
+                                                 PerunAdapterMethods adapter)
+    {
+        CircuitBreaker breaker = circuitBreakers.get(adapter);
+        if (breaker != null && !breaker.tryAcquire()) {
+            CompletableFuture<T> rejected = new CompletableFuture<>();
+            rejected.completeExceptionally(new PerunUnavailableException("circuit breaker of "
+                    + getAdapterName(adapter) + " is open"));
+            return rejected;
+        }
+
+        long start = System.currentTimeMillis();
+        CompletableFuture<T> future;
+        try {
+            future = call.apply(adapter);
+        } catch (RuntimeException e) {
+            future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+        }
+        if (breaker != null || adaptiveRouter != null) {
+            future.whenComplete((value, ex) -> recordOutcome(method, adapter, breaker, start,
+                    ex == null ? null : unwrap(ex)));
+        }
+        return future;
+    }
+
+    /**
+     * Errors reported by Perun (i.e. object not found) mean the adapter works, so they are recorded as successes.
+     * Unsupported operations say nothing about the health of the adapter.
+     */
+    private void recordOutcome(String method, PerunAdapterMethods adapter, CircuitBreaker breaker, long start,
+                               Throwable failure)
+    {
+        long duration = System.currentTimeMillis() - start;
+        String adapterName = getAdapterName(adapter);
+        if (failure instanceof UnsupportedOperationException) {
+            if (breaker != null) {
+                breaker.onIgnored();
+            }
+            if (adaptiveRouter != null) {
+                adaptiveRouter.onUnsupported(method, adapterName);
+            }
+        } else if (failure == null || PerunConnectorRpc.isErrorReportedByPerun(failure)) {
+            if (breaker != null) {
+                breaker.onSuccess(duration);
+            }
+            if (adaptiveRouter != null) {
+                adaptiveRouter.onSuccess(method, adapterName, duration);
+            }
+        } else {
+            if (breaker != null) {
+                breaker.onFailure(duration);
+            }
+            if (adaptiveRouter != null) {
+                adaptiveRouter.onFailure(method, adapterName, duration);
             }
         }
     }
+
+    /**
+     * Get adapter to be called first - the one bound to the method, or the other one if it performs better
+     * for the method.
+     */
+    private PerunAdapterMethods route(String method) {
+        PerunAdapterMethods bound = methodBindings.getOrDefault(method, this.getAdapterPrimary());
+        if (adaptiveRouter != null) {
+            PerunAdapterMethods other = getOtherAdapter(bound);
+            if (other != null && other.supports(method)
+                    && adaptiveRouter.preferOther(method, getAdapterName(bound), getAdapterName(other))) {
+                return other;
+            }
+        }
+        return bound;
+    }
+
+    /**
+     * Get adapter to be called when the given one does not support the method (although it has declared so).
+     * The method is bound to that adapter, so the next calls do not throw the exception again.
+     */
+    private PerunAdapterMethods getSupportingAdapter(String method, PerunAdapterMethods unsupporting) {
+        PerunAdapterMethods next;
+        if (unsupporting != this.getAdapterPrimary()) {
+            next = this.getAdapterPrimary();
+        } else {
+            next = this.isCallFallback() ? this.getAdapterFallback() : null;
+        }
+        if (next != null && next != unsupporting && methodBindings.replace(method, unsupporting, next)) {
+            log.info("{} is not supported by {}, bound to {}", method, getAdapterName(unsupporting),
+                    getAdapterName(next));
+        }
+        return next;
+    }
+
+    private PerunAdapterMethods getOtherAdapter(PerunAdapterMethods adapter) {
+        return adapter == adapterFailover ? this.getAdapterPrimary() : adapterFailover;
+    }
+
+    private boolean canFailover(String method, PerunAdapterMethods failed, PerunAdapterMethods other,
+                                Throwable failure)
+    {
+        return (!circuitBreakers.isEmpty() || adaptiveRouter != null) && other != null && other != failed
+                && other.supports(method) && !PerunConnectorRpc.isErrorReportedByPerun(failure);
+    }
+
+    private Throwable unwrap(Throwable ex) {
+        return ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+    }
+
+    private String getAdapterName(PerunAdapterMethods adapter) {
+        if (adapter == this.getAdapterRpc()) {
+            return "RPC";
+        } else if (adapter == this.getAdapterLdap()) {
+            return "LDAP";
+        }
+        return adapter.getClass().getSimpleName();
+    }
+
+    private Collection<String> getRegisteredClientIds() {
+        return clientService.getAllClients().stream()
+                .map(ClientDetailsEntity::getClientId)
+                .filter(StringUtils::hasText)
+                .collect(Collectors.toList());
+    }
+
 }
@@ -18,6 +18,7 @@ import cz.muni.ics.oidc.server.PerunPrincipal;
 import cz.muni.ics.oidc.server.adapters.PerunAdapter;
 import cz.muni.ics.oidc.server.adapters.PerunAdapterMethods;
 import cz.muni.ics.oidc.server.adapters.PerunAdapterMethodsLdap;
+import cz.muni.ics.oidc.server.adapters.PerunMetadataCache;
 import cz.muni.ics.oidc.server.connectors.Affiliation;
 import cz.muni.ics.oidc.server.connectors.PerunConnectorLdap;
 import org.apache.directory.api.ldap.model.entry.Attribute;
@@ -84,12 +85,17 @@ public class PerunAdapterLdap extends PerunAdapterWithMappingServices implements
 	private PerunConnectorLdap connectorLdap;
 	private String oidcClientIdAttr;
 	private String oidcCheckMembershipAttr;
+	private PerunMetadataCache metadataCache;
 	private final JsonNodeFactory jsonNodeFactory = JsonNodeFactory.instance;
 
 	public void setConnectorLdap(PerunConnectorLdap connectorLdap) {
 		this.connectorLdap = connectorLdap;
 	}
 
+	public void setMetadataCache(PerunMetadataCache metadataCache) {
+		this.metadataCache = metadataCache;
+	}
+
 	public void setOidcClientIdAttr(String oidcClientIdAttr) {
 		this.oidcClientIdAttr = oidcClientIdAttr;
 	}
@@ -261,6 +267,13 @@ public class PerunAdapterLdap extends PerunAdapterWithMappingServices implements
 
 	@Override
 	public Vo getVoByShortName(String shortName) {
+		if (metadataCache != null) {
+			return metadataCache.getVoByShortName(shortName, this::fetchVoByShortName);
+		}
+		return fetchVoByShortName(shortName);
+	}
+
+	private Vo fetchVoByShortName(String shortName) {
 		FilterBuilder filter = and(equal(OBJECT_CLASS, PERUN_VO), equal(O, shortName));
 		String[] attributes = new String[] { PERUN_VO_ID, O, DESCRIPTION };
 		EntryMapper<Vo> mapper = e -> {
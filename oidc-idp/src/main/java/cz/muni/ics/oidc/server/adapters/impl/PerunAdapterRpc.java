@@ -2,6 +2,9 @@ package cz.muni.ics.oidc.server.adapters.impl;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.NullNode;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
 import cz.muni.ics.oidc.models.AttributeMapping;
 import cz.muni.ics.oidc.models.Facility;
 import cz.muni.ics.oidc.models.Group;
@@ -20,6 +23,7 @@ import cz.muni.ics.oidc.server.PerunPrincipal;
 import cz.muni.ics.oidc.server.adapters.PerunAdapter;
 import cz.muni.ics.oidc.server.adapters.PerunAdapterMethods;
 import cz.muni.ics.oidc.server.adapters.PerunAdapterMethodsRpc;
+import cz.muni.ics.oidc.server.adapters.PerunMetadataCache;
 import cz.muni.ics.oidc.server.connectors.Affiliation;
 import cz.muni.ics.oidc.server.connectors.PerunConnectorRpc;
 import org.slf4j.Logger;
@@ -36,6 +40,11 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 import static cz.muni.ics.oidc.models.PerunAttributeValue.STRING_TYPE;
@@ -61,6 +70,9 @@ public class PerunAdapterRpc extends PerunAdapterWithMappingServices implements
 	private final static Logger log = LoggerFactory.getLogger(PerunAdapterRpc.class);
 
 	private PerunConnectorRpc connectorRpc;
+	private Cache<String, FacilityCapabilities> capabilitiesCache;
+	private PerunMetadataCache metadataCache;
+	private Cache<String, Boolean> registrationFormsCache;
 
 	private String oidcClientIdAttr;
 	private String oidcCheckMembershipAttr;
@@ -71,6 +83,73 @@ public class PerunAdapterRpc extends PerunAdapterWithMappingServices implements
 		this.connectorRpc = connectorRpc;
 	}
 
+	public void setMetadataCache(PerunMetadataCache metadataCache) {
+		this.metadataCache = metadataCache;
+	}
+
+	public void setRegistrationFormsCacheTtlSecs(long registrationFormsCacheTtlSecs) {
+		if (registrationFormsCacheTtlSecs <= 0) {
+			this.registrationFormsCache = null;
+			return;
+		}
+		this.registrationFormsCache = CacheBuilder.newBuilder()
+				.maximumSize(10000)
+				.expireAfterWrite(registrationFormsCacheTtlSecs, TimeUnit.SECONDS)
+				.build();
+	}
+
+	public void setCapabilitiesCacheTtlSecs(long capabilitiesCacheTtlSecs) {
+		if (capabilitiesCacheTtlSecs <= 0) {
+			this.capabilitiesCache = null;
+			return;
+		}
+		this.capabilitiesCache = CacheBuilder.newBuilder()
+				.maximumSize(1000)
+				.expireAfterWrite(capabilitiesCacheTtlSecs, TimeUnit.SECONDS)
+				.recordStats()
+				.build();
+	}
+
+	/**
+	 * Get statistics of the cache of facility capabilities.
+	 * @return Map of statistics, empty if the cache is disabled.
+	 */
+	public Map<String, Object> getCapabilitiesCacheStats() {
+		Map<String, Object> stats = new LinkedHashMap<>();
+		if (capabilitiesCache != null) {
+			CacheStats cacheStats = capabilitiesCache.stats();
+			stats.put("size", capabilitiesCache.size());
+			stats.put("hitCount", cacheStats.hitCount());
+			stats.put("missCount", cacheStats.missCount());
+			stats.put("hitRate", cacheStats.hitRate());
+		}
+		return stats;
+	}
+
+	/**
+	 * Forget capabilities of the changed facility.
+	 * @param facilityId ID of the facility.
+	 */
+	public void invalidateFacility(long facilityId) {
+		if (capabilitiesCache != null) {
+			String prefix = facilityId + ":";
+			capabilitiesCache.asMap().keySet().removeIf(key -> key.startsWith(prefix));
+		}
+	}
+
+	/**
+	 * Forget data depending on the changed group.
+	 * @param groupId ID of the group.
+	 */
+	public void invalidateGroup(long groupId) {
+		if (capabilitiesCache != null) {
+			capabilitiesCache.asMap().values().removeIf(capabilities -> capabilities.containsGroup(groupId));
+		}
+		if (registrationFormsCache != null) {
+			registrationFormsCache.invalidate("group:" + groupId);
+		}
+	}
+
 	public void setOidcClientIdAttr(String oidcClientIdAttr) {
 		this.oidcClientIdAttr = oidcClientIdAttr;
 	}
@@ -171,9 +250,16 @@ public class PerunAdapterRpc extends PerunAdapterWithMappingServices implements
 
 		// filter groups only if their VO is in the allowed VOs and if they have registration form
 		List<Group> allowedGroups = getAllowedGroups(facility);
-		List<Group> groupsForRegistration = allowedGroups.stream()
-				.filter(group -> vosForRegistration.containsKey(group.getVoId()) && getApplicationForm(group))
+		List<Group> candidateGroups = allowedGroups.stream()
+				.filter(group -> vosForRegistration.containsKey(group.getVoId()))
 				.collect(Collectors.toList());
+		List<CompletableFuture<Boolean>> probes = probeApplicationForms(candidateGroups, null);
+		List<Group> groupsForRegistration = new ArrayList<>();
+		for (int i = 0; i < candidateGroups.size(); i++) {
+			if (probes.get(i).join()) {
+				groupsForRegistration.add(candidateGroups.get(i));
+			}
+		}
 
 		// create map for processing
 		Map<Vo, List<Group>> result = new HashMap<>();
@@ -196,16 +282,16 @@ public class PerunAdapterRpc extends PerunAdapterWithMappingServices implements
 		}
 
 		List<Group> allowedGroups = getAllowedGroups(facility);
-
-		if (!allowedGroups.isEmpty()) {
-			for (Group group : allowedGroups) {
-				if (getApplicationForm(group)) {
-					return true;
-				}
-			}
+		if (allowedGroups.isEmpty()) {
+			return false;
 		}
 
-		return false;
+		// the first group with form decides, the remaining groups are not probed then
+		CompletableFuture<Boolean> anyForm = new CompletableFuture<>();
+		List<CompletableFuture<Boolean>> probes = probeApplicationForms(allowedGroups, anyForm);
+		CompletableFuture.allOf(probes.toArray(new CompletableFuture[0])).thenRun(() -> anyForm.complete(false));
+
+		return anyForm.join();
 	}
 
 	@Override
@@ -214,10 +300,7 @@ public class PerunAdapterRpc extends PerunAdapterWithMappingServices implements
 			return false;
 		}
 
-		Map<String, Object> groupParams = new LinkedHashMap<>();
-		groupParams.put("id", groupId);
-		JsonNode groupResponse = connectorRpc.post(GROUPS_MANAGER, "getGroupById", groupParams);
-		Group group = RpcMapper.mapGroup(groupResponse);
+		Group group = getGroupById(groupId);
 
 		Map<String, Object> memberParams = new LinkedHashMap<>();
 		memberParams.put("vo", group.getVoId());
@@ -233,6 +316,19 @@ public class PerunAdapterRpc extends PerunAdapterWithMappingServices implements
 		return res.asBoolean(false);
 	}
 
+	@Override
+	public Set<Long> getGroupMembersUserIds(Long groupId) {
+		if (!this.connectorRpc.isEnabled()) {
+			return new HashSet<>();
+		}
+
+		Map<String, Object> map = new LinkedHashMap<>();
+		map.put("group", groupId);
+
+		JsonNode response = connectorRpc.post(GROUPS_MANAGER, "getGroupMembers", map);
+		return RpcMapper.mapMembers(response).stream().map(Member::getUserId).collect(Collectors.toSet());
+	}
+
 	@Override
 	public boolean setUserAttribute(Long userId, PerunAttribute attribute) {
 		if (!this.connectorRpc.isEnabled()) {
@@ -292,20 +388,32 @@ public class PerunAdapterRpc extends PerunAdapterWithMappingServices implements
 		}
 
 		List<Affiliation> affiliations = new ArrayList<>();
+		AttributeMapping mapping = this.getGroupAttributesMappingService().getMappingByIdentifier(groupAffiliationsAttr);
+		if (mapping == null || mapping.getRpcName() == null) {
+			log.warn("no RPC mapping of group attribute {}, cannot resolve group affiliations", groupAffiliationsAttr);
+			return affiliations;
+		}
 
-		List<Member> userMembers = getMembersByUser(userId);
-		for (Member member : userMembers) {
-			if (VALID.equals(member.getStatus())) {
-				List<Group> memberGroups = getMemberGroups(member.getId());
-				for (Group group : memberGroups) {
-					PerunAttributeValue attrValue = this.getGroupAttributeValue(group, groupAffiliationsAttr);
-					if (attrValue != null && attrValue.valueAsString() != null) {
-						long linuxTime = System.currentTimeMillis() / 1000L;
-						for (String value : attrValue.valueAsList()) {
-							Affiliation affiliation = new Affiliation(null, value, linuxTime);
-							log.debug("found {} on group {}", value, group.getName());
-							affiliations.add(affiliation);
-						}
+		// groups of all valid members (with the affiliations attribute) are fetched at once
+		List<CompletableFuture<List<Group>>> membersGroups = getMembersByUser(userId).stream()
+				.filter(member -> VALID.equals(member.getStatus()))
+				.map(member -> getMemberRichGroupsWithAttributesByNamesAsync(member.getId(),
+						Collections.singletonList(groupAffiliationsAttr)))
+				.collect(Collectors.toList());
+
+		for (CompletableFuture<List<Group>> memberGroups : membersGroups) {
+			for (Group group : joinRpcCall(memberGroups)) {
+				JsonNode attr = group.getAttributeByUrnName(mapping.getRpcName());
+				if (attr == null) {
+					continue;
+				}
+				PerunAttributeValue attrValue = RpcMapper.mapAttribute(attr).toPerunAttributeValue();
+				if (attrValue.valueAsString() != null) {
+					long linuxTime = System.currentTimeMillis() / 1000L;
+					for (String value : attrValue.valueAsList()) {
+						Affiliation affiliation = new Affiliation(null, value, linuxTime);
+						log.debug("found {} on group {}", value, group.getName());
+						affiliations.add(affiliation);
 					}
 				}
 			}
@@ -376,6 +484,13 @@ public class PerunAdapterRpc extends PerunAdapterWithMappingServices implements
 			return null;
 		}
 
+		if (metadataCache != null) {
+			return metadataCache.getVoByShortName(shortName, this::fetchVoByShortName);
+		}
+		return fetchVoByShortName(shortName);
+	}
+
+	private Vo fetchVoByShortName(String shortName) {
 		Map<String, Object> params = new LinkedHashMap<>();
 		params.put("shortName", shortName);
 
@@ -761,43 +876,17 @@ public class PerunAdapterRpc extends PerunAdapterWithMappingServices implements
 			return new HashSet<>();
 		}
 
-		Set<String> capabilities = new HashSet<>();
-		Set<String> resourceGroupNames = new HashSet<>();
-
-		if (null != resourceCapabilitiesAttrName) {
-			List<Resource> resources = this.getAssignedRichResources(facility);
-			for (Resource resource : resources) {
-				PerunAttributeValue attrValue = this.getResourceAttributeValue(resource.getId(), resourceCapabilitiesAttrName);
-
-				List<String> resourceCapabilities = attrValue.valueAsList();
-				if (resourceCapabilities == null || resourceCapabilities.size() == 0) {
-					continue;
-				}
-				List<Group> groups = this.getAssignedGroups(resource.getId());
-				for (Group group : groups) {
-					resourceGroupNames.add(group.getName());
-					String groupName = group.getName();
-					if (resource.getVo() != null) {
-						groupName = resource.getVo().getShortName() + ':' + groupName;
-					}
-					group.setUniqueGroupName(groupName);
-
-					if (groupNames.contains(groupName)) {
-						log.trace("Group [{}] found in users groups, add capabilities [{}]", groupName, resourceCapabilities);
-						capabilities.addAll(resourceCapabilities);
-					} else {
-						log.trace("Group [{}] not found in users groups, continue to the next one", groupName);
-					}
-				}
+		String key = facility.getId() + ":" + facilityCapabilitiesAttrName + ":" + resourceCapabilitiesAttrName;
+		FacilityCapabilities facilityCapabilities = capabilitiesCache != null ? capabilitiesCache.getIfPresent(key) : null;
+		if (facilityCapabilities == null) {
+			facilityCapabilities = loadFacilityCapabilities(facility, facilityCapabilitiesAttrName,
+					resourceCapabilitiesAttrName);
+			if (capabilitiesCache != null) {
+				capabilitiesCache.put(key, facilityCapabilities);
 			}
 		}
 
-		if (null != facilityCapabilitiesAttrName && !Collections.disjoint(groupNames, resourceGroupNames)) {
-			Set<String> facilityCapabilities = this.getFacilityCapabilities(facility, facilityCapabilitiesAttrName);
-			capabilities.addAll(facilityCapabilities);
-		}
-
-		return capabilities;
+		return facilityCapabilities.getCapabilities(groupNames);
 	}
 
 	@Override
@@ -903,6 +992,13 @@ public class PerunAdapterRpc extends PerunAdapterWithMappingServices implements
 			return null;
 		}
 
+		if (metadataCache != null) {
+			return metadataCache.getVoById(voId, this::fetchVoById);
+		}
+		return fetchVoById(voId);
+	}
+
+	private Vo fetchVoById(Long voId) {
 		Map<String, Object> map = new LinkedHashMap<>();
 		map.put("id", voId);
 
@@ -910,6 +1006,25 @@ public class PerunAdapterRpc extends PerunAdapterWithMappingServices implements
 		return RpcMapper.mapVo(res);
 	}
 
+	private Group getGroupById(Long groupId) {
+		if (!this.connectorRpc.isEnabled()) {
+			return null;
+		}
+
+		if (metadataCache != null) {
+			return metadataCache.getGroupById(groupId, this::fetchGroupById);
+		}
+		return fetchGroupById(groupId);
+	}
+
+	private Group fetchGroupById(Long groupId) {
+		Map<String, Object> map = new LinkedHashMap<>();
+		map.put("id", groupId);
+
+		JsonNode res = connectorRpc.post(GROUPS_MANAGER, "getGroupById", map);
+		return RpcMapper.mapGroup(res);
+	}
+
 	private List<Group> getAssignedGroups(Long resourceId) {
 		if (!this.connectorRpc.isEnabled()) {
 			return new ArrayList<>();
@@ -923,6 +1038,70 @@ public class PerunAdapterRpc extends PerunAdapterWithMappingServices implements
 		return RpcMapper.mapGroups(response);
 	}
 
+	private CompletableFuture<List<Group>> getAssignedGroupsAsync(Long resourceId) {
+		if (!this.connectorRpc.isEnabled()) {
+			return CompletableFuture.completedFuture(new ArrayList<>());
+		}
+
+		Map<String, Object> params = new LinkedHashMap<>();
+		params.put("resource", resourceId);
+
+		return connectorRpc.postAsync(RESOURCES_MANAGER, "getAssignedGroups", params).thenApply(RpcMapper::mapGroups);
+	}
+
+	@Override
+	public CompletableFuture<Facility> getFacilityByClientIdAsync(String clientId) {
+		if (!this.connectorRpc.isEnabled()) {
+			return CompletableFuture.completedFuture(null);
+		} else if (!StringUtils.hasText(clientId)) {
+			return CompletableFuture.completedFuture(null);
+		}
+
+		AttributeMapping mapping = this.getFacilityAttributesMappingService().getMappingByIdentifier(oidcClientIdAttr);
+
+		Map<String, Object> map = new LinkedHashMap<>();
+		map.put("attributeName", mapping.getRpcName());
+		map.put("attributeValue", clientId);
+
+		return connectorRpc.postAsync(FACILITIES_MANAGER, "getFacilitiesByAttribute", map)
+				.thenApply(jsonNode -> (jsonNode.size() > 0) ? RpcMapper.mapFacility(jsonNode.get(0)) : null);
+	}
+
+	@Override
+	public CompletableFuture<Map<String, PerunAttributeValue>> getUserAttributeValuesAsync(Long userId,
+																						  Collection<String> attrsToFetch)
+	{
+		return getAttributesAsync(PerunEntityType.USER, userId, attrsToFetch).thenApply(this::extractValues);
+	}
+
+	@Override
+	public CompletableFuture<Map<String, PerunAttributeValue>> getFacilityAttributeValuesAsync(Long facilityId,
+																							  Collection<String> attrsToFetch)
+	{
+		return getAttributesAsync(PerunEntityType.FACILITY, facilityId, attrsToFetch).thenApply(this::extractValues);
+	}
+
+	@Override
+	public CompletableFuture<Map<String, PerunAttributeValue>> getVoAttributeValuesAsync(Long voId,
+																						Collection<String> attrsToFetch)
+	{
+		return getAttributesAsync(PerunEntityType.VO, voId, attrsToFetch).thenApply(this::extractValues);
+	}
+
+	@Override
+	public CompletableFuture<Map<String, PerunAttributeValue>> getGroupAttributeValuesAsync(Long groupId,
+																						   Collection<String> attrsToFetch)
+	{
+		return getAttributesAsync(PerunEntityType.GROUP, groupId, attrsToFetch).thenApply(this::extractValues);
+	}
+
+	@Override
+	public CompletableFuture<Map<String, PerunAttributeValue>> getResourceAttributeValuesAsync(Long resourceId,
+																							  Collection<String> attrsToFetch)
+	{
+		return getAttributesAsync(PerunEntityType.RESOURCE, resourceId, attrsToFetch).thenApply(this::extractValues);
+	}
+
 	private Map<String, PerunAttributeValue> extractValues(Map<String, PerunAttribute> attributeMap) {
 		if (!this.connectorRpc.isEnabled()) {
 			return new HashMap<>();
@@ -947,27 +1126,7 @@ public class PerunAdapterRpc extends PerunAdapterWithMappingServices implements
 			return new HashMap<>();
 		}
 
-		Set<AttributeMapping> mappings;
-		switch (entity) {
-			case USER: mappings = this.getUserAttributesMappingService()
-					.getMappingsByIdentifiers(attrsToFetch);
-				break;
-			case FACILITY: mappings = this.getFacilityAttributesMappingService()
-					.getMappingsByIdentifiers(attrsToFetch);
-				break;
-			case VO: mappings = this.getVoAttributesMappingService()
-					.getMappingsByIdentifiers(attrsToFetch);
-				break;
-			case GROUP: mappings = this.getGroupAttributesMappingService()
-					.getMappingsByIdentifiers(attrsToFetch);
-				break;
-			case RESOURCE: mappings = this.getResourceAttributesMappingService()
-					.getMappingsByIdentifiers(attrsToFetch);
-				break;
-			default: mappings  = new HashSet<>();
-				break;
-		}
-
+		Set<AttributeMapping> mappings = getMappings(entity, attrsToFetch);
 		List<String> rpcNames = mappings.stream().map(AttributeMapping::getRpcName).collect(Collectors.toList());
 
 		Map<String, Object> map = new LinkedHashMap<>();
@@ -978,6 +1137,42 @@ public class PerunAdapterRpc extends PerunAdapterWithMappingServices implements
 		return RpcMapper.mapAttributes(res, mappings);
 	}
 
+	private CompletableFuture<Map<String, PerunAttribute>> getAttributesAsync(PerunEntityType entity, Long entityId,
+																			  Collection<String> attrsToFetch)
+	{
+		if (!this.connectorRpc.isEnabled()) {
+			return CompletableFuture.completedFuture(new HashMap<>());
+		} else if (attrsToFetch == null || attrsToFetch.isEmpty()) {
+			return CompletableFuture.completedFuture(new HashMap<>());
+		}
+
+		Set<AttributeMapping> mappings = getMappings(entity, attrsToFetch);
+		List<String> rpcNames = mappings.stream().map(AttributeMapping::getRpcName).collect(Collectors.toList());
+
+		Map<String, Object> map = new LinkedHashMap<>();
+		map.put(entity.toString().toLowerCase(), entityId);
+		map.put("attrNames", rpcNames);
+
+		return connectorRpc.postAsync(ATTRIBUTES_MANAGER, "getAttributes", map)
+				.thenApply(res -> RpcMapper.mapAttributes(res, mappings));
+	}
+
+	private Set<AttributeMapping> getMappings(PerunEntityType entity, Collection<String> attrsToFetch) {
+		switch (entity) {
+			case USER: return this.getUserAttributesMappingService()
+					.getMappingsByIdentifiers(attrsToFetch);
+			case FACILITY: return this.getFacilityAttributesMappingService()
+					.getMappingsByIdentifiers(attrsToFetch);
+			case VO: return this.getVoAttributesMappingService()
+					.getMappingsByIdentifiers(attrsToFetch);
+			case GROUP: return this.getGroupAttributesMappingService()
+					.getMappingsByIdentifiers(attrsToFetch);
+			case RESOURCE: return this.getResourceAttributesMappingService()
+					.getMappingsByIdentifiers(attrsToFetch);
+			default: return new HashSet<>();
+		}
+	}
+
 	private List<Group> getMemberGroups(Long memberId) {
 		if (!this.connectorRpc.isEnabled()) {
 			return new ArrayList<>();
@@ -1060,45 +1255,88 @@ public class PerunAdapterRpc extends PerunAdapterWithMappingServices implements
 		return result;
 	}
 
-	private boolean getApplicationForm(Group group) {
-		if (!this.connectorRpc.isEnabled()) {
-			return false;
-		}
-		
-		Map<String, Object> map = new LinkedHashMap<>();
-		map.put("group", group.getId());
-		try {
-			if (group.getName().equalsIgnoreCase("members")) {
-				log.debug("getApplicationForm({}) continues to call regForm for VO {}", group, group.getVoId());
-				return getApplicationForm(group.getVoId());
-			} else {
-				connectorRpc.post(REGISTRAR_MANAGER, "getApplicationForm", map);
+	/**
+	 * Probe registration forms of the groups concurrently, with at most asyncThreads probes in flight, so one
+	 * request does not occupy all the threads of the connector. The calling thread waits for a free slot.
+	 * @param groups Groups to be probed.
+	 * @param anyForm Future completed with TRUE when a group with form is found, no more groups are probed then.
+	 *                Pass null to probe all the groups.
+	 * @return Answers of the started probes, in the order of the groups.
+	 */
+	private List<CompletableFuture<Boolean>> probeApplicationForms(List<Group> groups,
+																	 CompletableFuture<Boolean> anyForm)
+	{
+		Semaphore inFlight = new Semaphore(connectorRpc.getAsyncThreads());
+		List<CompletableFuture<Boolean>> probes = new ArrayList<>();
+		for (Group group : groups) {
+			inFlight.acquireUninterruptibly();
+			if (anyForm != null && anyForm.isDone()) {
+				inFlight.release();
+				break;
 			}
-		} catch (Exception e) {
-			// when group does not have form exception is thrown. Every error thus is supposed as group without form
-			// this method will be used after calling other RPC methods - if RPC is not available other methods should discover it first
-			return false;
+			CompletableFuture<Boolean> probe = hasApplicationFormAsync(group);
+			probe.whenComplete((hasForm, ex) -> {
+				inFlight.release();
+				if (anyForm != null && Boolean.TRUE.equals(hasForm)) {
+					anyForm.complete(true);
+				}
+			});
+			probes.add(probe);
 		}
-
-		return true;
+		return probes;
 	}
 
-	private boolean getApplicationForm(Long voId) {
+	/**
+	 * Check if the group (or VO in case of the 'members' group) has registration form. Answers are cached
+	 * for registrationFormsCacheTtlSecs (answers for groups are dropped sooner by GROUP change events),
+	 * failures not reported by Perun itself are not cached.
+	 */
+	private CompletableFuture<Boolean> hasApplicationFormAsync(Group group) {
 		if (!this.connectorRpc.isEnabled()) {
-			return false;
+			return CompletableFuture.completedFuture(false);
 		}
 
 		Map<String, Object> map = new LinkedHashMap<>();
-		map.put("vo", voId);
-		try {
-			connectorRpc.post(REGISTRAR_MANAGER, "getApplicationForm", map);
-		} catch (Exception e) {
-			// when vo does not have form exception is thrown. Every error thus is supposed as vo without form
-			// this method will be used after calling other RPC methods - if RPC is not available other methods should discover it first
-			return false;
+		String key;
+		if (group.getName().equalsIgnoreCase("members")) {
+			log.debug("getApplicationForm({}) continues to call regForm for VO {}", group, group.getVoId());
+			map.put("vo", group.getVoId());
+			key = "vo:" + group.getVoId();
+		} else {
+			map.put("group", group.getId());
+			key = "group:" + group.getId();
+		}
+
+		if (registrationFormsCache != null) {
+			Boolean hasForm = registrationFormsCache.getIfPresent(key);
+			if (hasForm != null) {
+				return CompletableFuture.completedFuture(hasForm);
+			}
 		}
 
-		return true;
+		return connectorRpc.postAsync(REGISTRAR_MANAGER, "getApplicationForm", map).handle((res, ex) -> {
+			// when group does not have form exception is thrown. Every error thus is supposed as group without form
+			// this method will be used after calling other RPC methods - if RPC is not available other methods should discover it first
+			boolean hasForm = ex == null;
+			if (registrationFormsCache != null && (hasForm || PerunConnectorRpc.isErrorReportedByPerun(ex))) {
+				registrationFormsCache.put(key, hasForm);
+			}
+			return hasForm;
+		});
+	}
+
+	/**
+	 * Wait for the result of asynchronous call, rethrowing the original exception of the failed call.
+	 */
+	private <T> T joinRpcCall(CompletableFuture<T> call) {
+		try {
+			return call.join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw e;
+		}
 	}
 
 	private List<Group> getGroupsWhereUserIsActive(Facility facility, Long userId) {
@@ -1164,6 +1402,28 @@ public class PerunAdapterRpc extends PerunAdapterWithMappingServices implements
 		map.put("attrNames", rpcNames);
 
 		JsonNode res = connectorRpc.post(GROUPS_MANAGER, "getRichGroupsAssignedToResourceWithAttributesByNames", map);
+		return mapRichGroups(res);
+	}
+
+	private CompletableFuture<List<Group>> getMemberRichGroupsWithAttributesByNamesAsync(Long memberId,
+																						 List<String> attrNames)
+	{
+		if (!this.connectorRpc.isEnabled()) {
+			return CompletableFuture.completedFuture(new ArrayList<>());
+		}
+
+		Map<String, Object> map = new LinkedHashMap<>();
+		Set<AttributeMapping> mappings = this.getGroupAttributesMappingService()
+				.getMappingsByIdentifiers(attrNames);
+		List<String> rpcNames = mappings.stream().map(AttributeMapping::getRpcName).collect(Collectors.toList());
+		map.put("member", memberId);
+		map.put("attrNames", rpcNames);
+
+		return connectorRpc.postAsync(GROUPS_MANAGER, "getMemberRichGroupsWithAttributesByNames", map)
+				.thenApply(this::mapRichGroups);
+	}
+
+	private List<Group> mapRichGroups(JsonNode res) {
 		List<Group> groups = new ArrayList<>();
 
 		for (int i = 0; i < res.size(); i++) {
@@ -1235,20 +1495,59 @@ public class PerunAdapterRpc extends PerunAdapterWithMappingServices implements
 		return RpcMapper.mapUserExtSources(response);
 	}
 
-	private Set<String> getFacilityCapabilities(Facility facility, String capabilitiesAttrName) {
-		if (!this.connectorRpc.isEnabled()) {
-			return new HashSet<>();
-		}
+	/**
+	 * Resolve capabilities of all resources of the facility. Resources of the facility are fetched by one call,
+	 * their capabilities (and groups of the resources having some) are fetched concurrently.
+	 */
+	private FacilityCapabilities loadFacilityCapabilities(Facility facility, String facilityCapabilitiesAttrName,
+														  String resourceCapabilitiesAttrName)
+	{
+		FacilityCapabilities facilityCapabilities = new FacilityCapabilities();
+		List<CompletableFuture<Void>> calls = new ArrayList<>();
+		AtomicInteger callCount = new AtomicInteger();
 
-		Set<String> capabilities = new HashSet<>();
-		if (facility != null) {
-			PerunAttributeValue attr = getFacilityAttributeValue(facility, capabilitiesAttrName);
-			if (attr != null && attr.valueAsList() != null) {
-				capabilities = new HashSet<>(attr.valueAsList());
+		if (null != resourceCapabilitiesAttrName) {
+			List<Resource> resources = this.getAssignedRichResources(facility);
+			callCount.incrementAndGet();
+			List<String> attrNames = Collections.singletonList(resourceCapabilitiesAttrName);
+			for (Resource resource : resources) {
+				callCount.incrementAndGet();
+				calls.add(this.getResourceAttributeValuesAsync(resource.getId(), attrNames).thenCompose(values -> {
+					PerunAttributeValue attrValue = values.get(resourceCapabilitiesAttrName);
+					List<String> resourceCapabilities = attrValue != null ? attrValue.valueAsList() : null;
+					if (resourceCapabilities == null || resourceCapabilities.isEmpty()) {
+						return CompletableFuture.completedFuture(null);
+					}
+					callCount.incrementAndGet();
+					return this.getAssignedGroupsAsync(resource.getId()).thenAccept(groups -> {
+						for (Group group : groups) {
+							String groupName = group.getName();
+							if (resource.getVo() != null) {
+								groupName = resource.getVo().getShortName() + ':' + groupName;
+							}
+							facilityCapabilities.addResourceGroup(group.getId(), group.getName(), groupName,
+									resourceCapabilities);
+						}
+					});
+				}));
 			}
 		}
 
-		return capabilities;
+		if (null != facilityCapabilitiesAttrName) {
+			callCount.incrementAndGet();
+			calls.add(this.getFacilityAttributeValuesAsync(facility.getId(),
+					Collections.singletonList(facilityCapabilitiesAttrName)).thenAccept(values -> {
+				PerunAttributeValue attr = values.get(facilityCapabilitiesAttrName);
+				if (attr != null && attr.valueAsList() != null) {
+					facilityCapabilities.addFacilityCapabilities(attr.valueAsList());
+				}
+			}));
+		}
+
+		joinRpcCall(CompletableFuture.allOf(calls.toArray(new CompletableFuture[0])));
+
+		log.debug("resolved capabilities of facility {} by {} calls", facility.getId(), callCount.get());
+		return facilityCapabilities;
 	}
 
 }
@@ -21,6 +21,16 @@ public abstract class ClaimSource {
 
 	public abstract JsonNode produceValue(ClaimSourceProduceContext pctx);
 
+	/**
+	 * Check if the produced value depends on the client (or the facility of the client). Values of claims
+	 * that depend only on the user are cached per user and shared among all clients. Values derived from group
+	 * memberships have to stay client dependent, as changes of groups invalidate only client dependent values.
+	 * @return TRUE if the value depends on the client, FALSE if it depends only on the user.
+	 */
+	public boolean isClientDependent() {
+		return true;
+	}
+
 	@Override
 	public String toString() {
 		return this.getClass().getName();
@@ -17,6 +17,10 @@ import org.slf4j.LoggerFactory;
  *     <li><b>custom.claim.[claimName].scope</b> - scope that needs to be granted to include the claim</li>
  *     <li><b>custom.claim.[claimName].source.class</b> instance of a class implementing {@link ClaimSource}</li>
  *     <li><b>custom.claim.[claimName].modifier.class</b> instance of a class implementing {@link ClaimModifier}</li>
+ *     <li><b>custom.claim.[claimName].timeout</b> - max time in milliseconds for producing the value when claims
+ *     are produced in parallel, defaults to <i>userinfo.claims.timeoutMs</i></li>
+ *     <li><b>custom.claim.[claimName].timeout.fallback</b> - what to do when the timeout passes, one of
+ *     {@link TimeoutFallback} values, defaults to <i>userinfo.claims.timeout.fallback</i></li>
  * </ul>
  *
  *
@@ -32,15 +36,23 @@ public class PerunCustomClaimDefinition {
 	private String claim;
 	private ClaimSource claimSource;
 	private ClaimModifier claimModifier;
+	private long timeout;
+	private TimeoutFallback timeoutFallback;
 
-	public PerunCustomClaimDefinition(String scope, String claim, ClaimSource claimSource, ClaimModifier claimModifier) {
+	public PerunCustomClaimDefinition(String scope, String claim, ClaimSource claimSource, ClaimModifier claimModifier,
+									  long timeout, TimeoutFallback timeoutFallback)
+	{
 		this.scope = scope;
 		this.claim = claim;
 		this.claimSource = claimSource;
 		this.claimModifier = claimModifier;
-		log.debug("initialized scope '{}' with claim '{}', claimSource '{}' and modifier '{}", scope, claim,
+		this.timeout = timeout;
+		this.timeoutFallback = timeoutFallback;
+		log.debug("initialized scope '{}' with claim '{}', claimSource '{}' and modifier '{}', timeout {}ms ({})",
+				scope, claim,
 				(claimSource != null ? claimSource.getClass().getSimpleName() : "none"),
-				(claimModifier != null ? claimModifier.getClass().getSimpleName() : "none")
+				(claimModifier != null ? claimModifier.getClass().getSimpleName() : "none"),
+				timeout, timeoutFallback
 		);
 	}
 
@@ -60,4 +72,22 @@ public class PerunCustomClaimDefinition {
 		return claimModifier;
 	}
 
+	public long getTimeout() {
+		return timeout;
+	}
+
+	public TimeoutFallback getTimeoutFallback() {
+		return timeoutFallback;
+	}
+
+	/**
+	 * Action taken when the value of the claim is not produced in time.
+	 */
+	public enum TimeoutFallback {
+		/** Claim is not included. */
+		OMIT,
+		/** The last successfully produced value of the claim for the user and client is used (if any). */
+		LAST_VALUE
+	}
+
 }
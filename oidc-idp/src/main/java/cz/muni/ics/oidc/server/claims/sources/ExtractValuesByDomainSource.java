@@ -86,6 +86,11 @@ public class ExtractValuesByDomainSource extends ClaimSource {
 		return result;
 	}
 
+	@Override
+	public boolean isClientDependent() {
+		return false;
+	}
+
 	private boolean hasDomain(String value, String domain) {
 		String[] parts = value.split("@");
 		return parts[parts.length - 1].equals(domain);
@@ -68,6 +68,11 @@ public class IsCesnetEligibleClaimSource extends ClaimSource {
         return result;
     }
 
+    @Override
+    public boolean isClientDependent() {
+        return false;
+    }
+
     private boolean isCesnetEligible(String attrValue) {
         if (!StringUtils.hasText(attrValue)) {
             return false;
@@ -51,6 +51,11 @@ public class PerunAttributeClaimSource extends ClaimSource {
 		return value;
 	}
 
+	@Override
+	public boolean isClientDependent() {
+		return false;
+	}
+
 	@Override
 	public String toString() {
 		return "Perun attribute " + attributeName;
@@ -75,6 +75,11 @@ public class StaticValueClaimSource extends ClaimSource {
 		return value;
 	}
 
+	@Override
+	public boolean isClientDependent() {
+		return false;
+	}
+
 	@Override
 	public String toString() {
 		return "Fixed value " + (valueArr != null ? Arrays.toString(valueArr) : valueStr);
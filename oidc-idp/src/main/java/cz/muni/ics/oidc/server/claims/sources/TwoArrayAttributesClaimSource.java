@@ -79,4 +79,9 @@ public class TwoArrayAttributesClaimSource extends ClaimSource {
 		return result;
 	}
 
+	@Override
+	public boolean isClientDependent() {
+		return false;
+	}
+
 }
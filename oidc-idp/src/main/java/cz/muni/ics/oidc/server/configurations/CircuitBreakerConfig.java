@@ -0,0 +1,99 @@
+package cz.muni.ics.oidc.server.configurations;
+
+/**
+ * Configuration of circuit breakers guarding calls to Perun adapters.
+ *
+ * @see cz.muni.ics.oidc.server.adapters.CircuitBreaker
+ *
+ * @author Pavol Pluta <pavol.pluta1@gmail.com>
+ */
+public class CircuitBreakerConfig {
+
+	private boolean enabled = false;
+	private int windowSize = 20;
+	private int minimumCalls = 10;
+	private int failureRateThreshold = 50;
+	private long slowCallDurationMs = 5000;
+	private int slowCallRateThreshold = 80;
+	private long openDurationSecs = 30;
+	private int halfOpenCalls = 3;
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	public int getWindowSize() {
+		return windowSize;
+	}
+
+	public void setWindowSize(int windowSize) {
+		this.windowSize = Math.max(1, windowSize);
+	}
+
+	public int getMinimumCalls() {
+		return minimumCalls;
+	}
+
+	public void setMinimumCalls(int minimumCalls) {
+		this.minimumCalls = Math.max(1, minimumCalls);
+	}
+
+	public int getFailureRateThreshold() {
+		return failureRateThreshold;
+	}
+
+	public void setFailureRateThreshold(int failureRateThreshold) {
+		this.failureRateThreshold = failureRateThreshold;
+	}
+
+	public long getSlowCallDurationMs() {
+		return slowCallDurationMs;
+	}
+
+	public void setSlowCallDurationMs(long slowCallDurationMs) {
+		this.slowCallDurationMs = slowCallDurationMs;
+	}
+
+	public int getSlowCallRateThreshold() {
+		return slowCallRateThreshold;
+	}
+
+	public void setSlowCallRateThreshold(int slowCallRateThreshold) {
+		this.slowCallRateThreshold = slowCallRateThreshold;
+	}
+
+	public long getOpenDurationSecs() {
+		return openDurationSecs;
+	}
+
+	public void setOpenDurationSecs(long openDurationSecs) {
+		this.openDurationSecs = openDurationSecs;
+	}
+
+	public int getHalfOpenCalls() {
+		return halfOpenCalls;
+	}
+
+	public void setHalfOpenCalls(int halfOpenCalls) {
+		this.halfOpenCalls = Math.max(1, halfOpenCalls);
+	}
+
+	@Override
+	public String toString() {
+		return "CircuitBreakerConfig{" +
+				"enabled=" + enabled +
+				", windowSize=" + windowSize +
+				", minimumCalls=" + minimumCalls +
+				", failureRateThreshold=" + failureRateThreshold +
+				", slowCallDurationMs=" + slowCallDurationMs +
+				", slowCallRateThreshold=" + slowCallRateThreshold +
+				", openDurationSecs=" + openDurationSecs +
+				", halfOpenCalls=" + halfOpenCalls +
+				'}';
+	}
+
+}
@@ -0,0 +1,82 @@
+package cz.muni.ics.oidc.server.connectors;
+
+import org.apache.http.HttpClientConnection;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.ConnectionRequest;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pooling connection manager measuring how long the callers wait for a connection from the pool.
+ * Together with the state of the pool (leased, pending and available connections) the statistics
+ * show if the pool is sized for the traffic.
+ *
+ * @author Pavol Pluta <pavol.pluta1@gmail.com>
+ */
+public class InstrumentedConnectionManager extends PoolingHttpClientConnectionManager {
+
+	private final AtomicLong requestCount = new AtomicLong();
+	private final AtomicLong waitTimeMsTotal = new AtomicLong();
+	private final AtomicLong waitTimeMsMax = new AtomicLong();
+	private final AtomicLong timeoutCount = new AtomicLong();
+
+	@Override
+	public ConnectionRequest requestConnection(HttpRoute route, Object state) {
+		ConnectionRequest request = super.requestConnection(route, state);
+		return new ConnectionRequest() {
+			@Override
+			public HttpClientConnection get(long timeout, TimeUnit tunit)
+					throws InterruptedException, ExecutionException, ConnectionPoolTimeoutException
+			{
+				long start = System.currentTimeMillis();
+				try {
+					return request.get(timeout, tunit);
+				} catch (ConnectionPoolTimeoutException e) {
+					timeoutCount.incrementAndGet();
+					throw e;
+				} finally {
+					recordWait(System.currentTimeMillis() - start);
+				}
+			}
+
+			@Override
+			public boolean cancel() {
+				return request.cancel();
+			}
+		};
+	}
+
+	/**
+	 * Get statistics of the pool.
+	 * @return Map of statistics.
+	 */
+	public Map<String, Object> getStats() {
+		PoolStats poolStats = getTotalStats();
+		long requests = requestCount.get();
+		Map<String, Object> stats = new LinkedHashMap<>();
+		stats.put("max", poolStats.getMax());
+		stats.put("maxPerRoute", getDefaultMaxPerRoute());
+		stats.put("leased", poolStats.getLeased());
+		stats.put("pending", poolStats.getPending());
+		stats.put("available", poolStats.getAvailable());
+		stats.put("requestCount", requests);
+		stats.put("timeoutCount", timeoutCount.get());
+		stats.put("waitTimeMsAvg", requests > 0 ? (double) waitTimeMsTotal.get() / requests : 0);
+		stats.put("waitTimeMsMax", waitTimeMsMax.get());
+		return stats;
+	}
+
+	private void recordWait(long waitMs) {
+		requestCount.incrementAndGet();
+		waitTimeMsTotal.addAndGet(waitMs);
+		waitTimeMsMax.accumulateAndGet(waitMs, Math::max);
+	}
+
+}
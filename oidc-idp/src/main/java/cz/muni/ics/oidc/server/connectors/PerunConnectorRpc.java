@@ -3,14 +3,17 @@ package cz.muni.ics.oidc.server.connectors;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import cz.muni.ics.oidc.aop.ExecutionTimeLoggingAspect;
 import cz.muni.ics.oidc.aop.LogTimes;
+import cz.muni.ics.oidc.aop.LoggingUtils;
 import org.apache.http.HeaderElement;
 import org.apache.http.HeaderElementIterator;
 import org.apache.http.client.config.RequestConfig;
 import org.apache.http.conn.ConnectionKeepAliveStrategy;
 import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClientBuilder;
 import org.apache.http.impl.client.HttpClients;
-import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.apache.http.message.BasicHeaderElementIterator;
 import org.apache.http.protocol.HTTP;
 import org.slf4j.Logger;
@@ -25,10 +28,17 @@ import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.RestTemplate;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import java.io.IOException;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Connector for calling Perun RPC
@@ -55,6 +65,18 @@ public class PerunConnectorRpc {
 	private boolean isEnabled;
 	private String serializer;
 	private RestTemplate restTemplate;
+	private int asyncThreads = 20;
+	private ThreadPoolExecutor asyncExecutor;
+	private RpcResponseCache responseCache;
+	private int poolMaxTotal = 20;
+	private int poolMaxPerRoute = 18;
+	private int connectionRequestTimeoutMs = 30000;
+	private int connectTimeoutMs = 30000;
+	private int socketTimeoutMs = 60000;
+	private long keepAliveMs = 20000;
+	private long idleEvictionSecs = 0;
+	private int validateAfterInactivityMs = 2000;
+	private InstrumentedConnectionManager connectionManager;
 
 	public PerunConnectorRpc(String perunUrl, String perunUser, String perunPassword, String enabled, String serializer) {
 		this.isEnabled = Boolean.parseBoolean(enabled);
@@ -106,18 +128,69 @@ public class PerunConnectorRpc {
 		this.serializer = serializer;
 	}
 
+	public int getAsyncThreads() {
+		return asyncThreads;
+	}
+
+	public void setAsyncThreads(int asyncThreads) {
+		this.asyncThreads = Math.max(1, asyncThreads);
+	}
+
+	public void setResponseCache(RpcResponseCache responseCache) {
+		this.responseCache = responseCache;
+	}
+
+	public void setPoolMaxTotal(int poolMaxTotal) {
+		this.poolMaxTotal = Math.max(1, poolMaxTotal);
+	}
+
+	public void setPoolMaxPerRoute(int poolMaxPerRoute) {
+		this.poolMaxPerRoute = Math.max(1, poolMaxPerRoute);
+	}
+
+	public void setConnectionRequestTimeoutMs(int connectionRequestTimeoutMs) {
+		this.connectionRequestTimeoutMs = connectionRequestTimeoutMs;
+	}
+
+	public void setConnectTimeoutMs(int connectTimeoutMs) {
+		this.connectTimeoutMs = connectTimeoutMs;
+	}
+
+	public void setSocketTimeoutMs(int socketTimeoutMs) {
+		this.socketTimeoutMs = socketTimeoutMs;
+	}
+
+	public void setKeepAliveMs(long keepAliveMs) {
+		this.keepAliveMs = keepAliveMs;
+	}
+
+	public void setIdleEvictionSecs(long idleEvictionSecs) {
+		this.idleEvictionSecs = idleEvictionSecs;
+	}
+
+	public void setValidateAfterInactivityMs(int validateAfterInactivityMs) {
+		this.validateAfterInactivityMs = validateAfterInactivityMs;
+	}
+
 	@PostConstruct
 	public void postInit() {
+		// when the queue is full, the call fails right away instead of waiting behind a backlog of slow calls
+		asyncExecutor = new ThreadPoolExecutor(asyncThreads, asyncThreads, 60L, TimeUnit.SECONDS,
+				new ArrayBlockingQueue<>(asyncThreads * 10),
+				new ThreadFactoryBuilder().setNameFormat("perun-rpc-async-%d").setDaemon(true).build(),
+				new ThreadPoolExecutor.AbortPolicy());
+		asyncExecutor.allowCoreThreadTimeOut(true);
 		restTemplate = new RestTemplate();
 		//HTTP connection pooling, see https://howtodoinjava.com/spring-restful/resttemplate-httpclient-java-config/
 		RequestConfig requestConfig = RequestConfig.custom()
-				.setConnectionRequestTimeout(30000) // The timeout when requesting a connection from the connection manager
-				.setConnectTimeout(30000) // Determines the timeout in milliseconds until a connection is established
-				.setSocketTimeout(60000) // The timeout for waiting for data
+				.setConnectionRequestTimeout(connectionRequestTimeoutMs) // The timeout when requesting a connection from the connection manager
+				.setConnectTimeout(connectTimeoutMs) // Determines the timeout in milliseconds until a connection is established
+				.setSocketTimeout(socketTimeoutMs) // The timeout for waiting for data
 				.build();
-		PoolingHttpClientConnectionManager poolingConnectionManager = new PoolingHttpClientConnectionManager();
-		poolingConnectionManager.setMaxTotal(20); // maximum connections total
-		poolingConnectionManager.setDefaultMaxPerRoute(18);
+		connectionManager = new InstrumentedConnectionManager();
+		connectionManager.setMaxTotal(poolMaxTotal); // maximum connections total
+		connectionManager.setDefaultMaxPerRoute(poolMaxPerRoute);
+		connectionManager.setValidateAfterInactivity(validateAfterInactivityMs); // check stale connections before reuse
 		ConnectionKeepAliveStrategy connectionKeepAliveStrategy = (response, context) -> {
 			HeaderElementIterator it = new BasicHeaderElementIterator
 					(response.headerIterator(HTTP.CONN_KEEP_ALIVE));
@@ -130,13 +203,20 @@ public class PerunConnectorRpc {
 					return Long.parseLong(value) * 1000;
 				}
 			}
-			return 20000L;
+			return keepAliveMs;
 		};
-		CloseableHttpClient httpClient = HttpClients.custom()
+		HttpClientBuilder httpClientBuilder = HttpClients.custom()
 				.setDefaultRequestConfig(requestConfig)
-				.setConnectionManager(poolingConnectionManager)
-				.setKeepAliveStrategy(connectionKeepAliveStrategy)
-				.build();
+				.setConnectionManager(connectionManager)
+				.setKeepAliveStrategy(connectionKeepAliveStrategy);
+		if (idleEvictionSecs > 0) {
+			// background thread closing expired connections and connections idle for longer than idleEvictionSecs
+			httpClientBuilder.evictExpiredConnections().evictIdleConnections(idleEvictionSecs, TimeUnit.SECONDS);
+		}
+		CloseableHttpClient httpClient = httpClientBuilder.build();
+		log.info("RPC connection pool of {} connections ({} per route), timeouts: request {} ms, connect {} ms, "
+				+ "socket {} ms", poolMaxTotal, poolMaxPerRoute, connectionRequestTimeoutMs, connectTimeoutMs,
+				socketTimeoutMs);
 		HttpComponentsClientHttpRequestFactory poolingRequestFactory = new HttpComponentsClientHttpRequestFactory();
 		poolingRequestFactory.setHttpClient(httpClient);
 		//basic authentication
@@ -146,6 +226,21 @@ public class PerunConnectorRpc {
 		restTemplate.setRequestFactory(authenticatingRequestFactory);
 	}
 
+	@PreDestroy
+	public void preDestroy() {
+		if (asyncExecutor != null) {
+			asyncExecutor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Get statistics of the HTTP connection pool.
+	 * @return Map of statistics, empty if the connector has not been initialized.
+	 */
+	public Map<String, Object> getPoolStats() {
+		return connectionManager != null ? connectionManager.getStats() : new LinkedHashMap<>();
+	}
+
 	/**
 	 * Make post call to Perun RPC
 	 * @param manager String value representing manager to be called. Use constants from this class.
@@ -159,6 +254,13 @@ public class PerunConnectorRpc {
 			return JsonNodeFactory.instance.nullNode();
 		}
 
+		if (responseCache != null) {
+			return responseCache.get(manager, method, map, () -> call(manager, method, map));
+		}
+		return call(manager, method, map);
+	}
+
+	private JsonNode call(String manager, String method, Map<String, Object> map) {
 		String actionUrl = perunUrl + '/' + serializer + '/' + manager + '/' + method;
 		//make the call
 		try {
@@ -181,4 +283,49 @@ public class PerunConnectorRpc {
 		}
 	}
 
+	/**
+	 * Make post call to Perun RPC in the pool of connector threads (size set by asyncThreads), so the callers
+	 * can issue several calls at once and compose the results. The call itself is still blocking - it holds
+	 * a connector thread for the whole round trip, and the servlet thread waiting for the result is held as well.
+	 * Independent calls thus run concurrently, but no servlet threads are saved when Perun is slow.
+	 * When all the connector threads are busy and the queue of waiting calls (10 times asyncThreads) is full,
+	 * the returned future fails with RejectedExecutionException.
+	 * @param manager String value representing manager to be called. Use constants from this class.
+	 * @param method Method to be called (i.e. getUserById)
+	 * @param map Map of parameters to be passed as request body
+	 * @return Future completed with the response from Perun, or exceptionally if the call fails
+	 */
+	public CompletableFuture<JsonNode> postAsync(String manager, String method, Map<String, Object> map) {
+		if (!this.isEnabled) {
+			return CompletableFuture.completedFuture(JsonNodeFactory.instance.nullNode());
+		}
+
+		// the call is made on this object, not through the proxy, so the times are logged here
+		try {
+			return CompletableFuture.supplyAsync(() -> LoggingUtils.logExecutionTimes(ExecutionTimeLoggingAspect.log,
+					PerunConnectorRpc.class.getName(), "post", new Object[] {manager, method, map},
+					() -> post(manager, method, map)), asyncExecutor);
+		} catch (RejectedExecutionException e) {
+			log.warn("all Perun RPC async threads are busy, rejecting call {}/{}", manager, method);
+			CompletableFuture<JsonNode> rejected = new CompletableFuture<>();
+			rejected.completeExceptionally(e);
+			return rejected;
+		}
+	}
+
+	/**
+	 * Check if the failure was reported by Perun (i.e. the object does not exist or the call was not permitted),
+	 * as opposed to the failure of the connection or of Perun itself.
+	 * @param ex Exception thrown by the call.
+	 * @return TRUE if Perun has answered the call with the error, FALSE otherwise.
+	 */
+	public static boolean isErrorReportedByPerun(Throwable ex) {
+		for (Throwable cause = ex; cause != null; cause = cause.getCause()) {
+			if (cause instanceof HttpClientErrorException) {
+				return true;
+			}
+		}
+		return false;
+	}
+
 }
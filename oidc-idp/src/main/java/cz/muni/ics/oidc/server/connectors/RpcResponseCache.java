@@ -0,0 +1,129 @@
+package cz.muni.ics.oidc.server.connectors;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.StringUtils;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Cache of responses of Perun RPC calls returning rarely changing data. Only the methods with configured TTL
+ * are cached, each of them in its own cache bounded by the maximum size. Responses are keyed by the parameters
+ * of the call serialized to JSON with sorted keys. Failed calls are not cached.
+ *
+ * TTLs are configured as comma separated list of manager/method=seconds, i.e.
+ * 'vosManager/getVoByShortName=3600,facilitiesManager/getAllowedGroups=300'.
+ *
+ * @author Pavol Pluta <pavol.pluta1@gmail.com>
+ */
+public class RpcResponseCache {
+
+	private static final Logger log = LoggerFactory.getLogger(RpcResponseCache.class);
+
+	private final Map<String, Cache<String, JsonNode>> caches;
+	private final ObjectMapper mapper = new ObjectMapper().configure(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS, true);
+
+	public RpcResponseCache(String ttls, long maxSize) {
+		Map<String, Cache<String, JsonNode>> caches = new LinkedHashMap<>();
+		if (StringUtils.hasText(ttls)) {
+			for (String policy : ttls.split("\\s*,\\s*")) {
+				String[] parts = policy.trim().split("\\s*=\\s*");
+				if (parts.length != 2 || !parts[0].contains("/")) {
+					throw new IllegalArgumentException("Invalid RPC response cache policy '" + policy
+							+ "', expected manager/method=seconds");
+				}
+				long ttlSecs = Long.parseLong(parts[1]);
+				if (ttlSecs > 0) {
+					caches.put(parts[0], CacheBuilder.newBuilder()
+							.maximumSize(maxSize)
+							.expireAfterWrite(ttlSecs, TimeUnit.SECONDS)
+							.recordStats()
+							.build());
+					log.info("responses of {} will be cached for {} seconds", parts[0], ttlSecs);
+				}
+			}
+		}
+		this.caches = Collections.unmodifiableMap(caches);
+	}
+
+	/**
+	 * Get response of the call from the cache or make the call.
+	 * @param manager Manager to be called.
+	 * @param method Method to be called.
+	 * @param params Parameters of the call.
+	 * @param call Call to Perun RPC.
+	 * @return Response from Perun (copy of the cached one).
+	 */
+	public JsonNode get(String manager, String method, Map<String, Object> params, Supplier<JsonNode> call) {
+		Cache<String, JsonNode> cache = caches.get(manager + '/' + method);
+		if (cache == null) {
+			return call.get();
+		}
+
+		String key;
+		try {
+			key = mapper.writeValueAsString(params);
+		} catch (JsonProcessingException e) {
+			log.debug("cannot create cache key for {}/{}, calling Perun", manager, method, e);
+			return call.get();
+		}
+
+		JsonNode response = cache.getIfPresent(key);
+		if (response == null) {
+			response = call.get();
+			if (response != null) {
+				cache.put(key, response);
+			}
+		} else {
+			log.trace("{}/{} with {} - returning cached response", manager, method, key);
+		}
+
+		return response == null ? null : response.deepCopy();
+	}
+
+	/**
+	 * Flush cached responses.
+	 * @param method Method (manager/method) to be flushed, all methods if NULL or empty.
+	 */
+	public void flush(String method) {
+		if (!StringUtils.hasText(method)) {
+			caches.values().forEach(Cache::invalidateAll);
+			log.info("flushed all cached RPC responses");
+		} else if (caches.containsKey(method)) {
+			caches.get(method).invalidateAll();
+			log.info("flushed cached RPC responses of {}", method);
+		}
+	}
+
+	/**
+	 * Get statistics of the cache.
+	 * @return Map of statistics per cached method.
+	 */
+	public Map<String, Object> getStats() {
+		Map<String, Object> stats = new LinkedHashMap<>();
+		for (Map.Entry<String, Cache<String, JsonNode>> entry : caches.entrySet()) {
+			Cache<String, JsonNode> cache = entry.getValue();
+			CacheStats cacheStats = cache.stats();
+			Map<String, Object> methodStats = new LinkedHashMap<>();
+			methodStats.put("size", cache.size());
+			methodStats.put("hitCount", cacheStats.hitCount());
+			methodStats.put("missCount", cacheStats.missCount());
+			methodStats.put("hitRate", cacheStats.hitRate());
+			methodStats.put("evictionCount", cacheStats.evictionCount());
+			stats.put(entry.getKey(), methodStats);
+		}
+		return stats;
+	}
+
+}
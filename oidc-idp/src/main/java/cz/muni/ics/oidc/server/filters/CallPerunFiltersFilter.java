@@ -2,6 +2,7 @@ package cz.muni.ics.oidc.server.filters;
 
 import cz.muni.ics.oidc.BeanUtil;
 import cz.muni.ics.oidc.models.Facility;
+import cz.muni.ics.oidc.models.PerunAttributeValue;
 import cz.muni.ics.oidc.models.PerunUser;
 import cz.muni.ics.oidc.server.adapters.PerunAdapter;
 import cz.muni.ics.oidc.server.configurations.PerunOidcConfig;
@@ -15,14 +16,20 @@ import org.springframework.util.StringUtils;
 import org.springframework.web.filter.GenericFilterBean;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.servlet.FilterChain;
 import javax.servlet.ServletException;
 import javax.servlet.ServletRequest;
 import javax.servlet.ServletResponse;
 import javax.servlet.http.HttpServletRequest;
 import java.io.IOException;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * This filter calls other Perun filters saved in the PerunFiltersContext
@@ -59,13 +66,20 @@ public class CallPerunFiltersFilter extends GenericFilterBean {
         this.perunFiltersContext = new PerunFiltersContext(coreProperties, beanUtil);
     }
 
+    @PreDestroy
+    public void preDestroy() {
+        if (perunFiltersContext != null) {
+            perunFiltersContext.destroy();
+        }
+    }
+
     @Override
     public void doFilter(ServletRequest servletRequest, ServletResponse servletResponse, FilterChain filterChain)
             throws IOException, ServletException
     {
-        List<PerunRequestFilter> filters = perunFiltersContext.getFilters();
-        if (filters != null && !filters.isEmpty()) {
-            HttpServletRequest request = (HttpServletRequest) servletRequest;
+        HttpServletRequest request = (HttpServletRequest) servletRequest;
+        List<PerunRequestFilter> filters = perunFiltersContext.getFilters(request);
+        if (!filters.isEmpty()) {
             ClientDetailsEntity client = FiltersUtils.extractClientFromRequest(request, authRequestFactory,
                     clientDetailsEntityService);
             Facility facility = null;
@@ -79,14 +93,62 @@ public class CallPerunFiltersFilter extends GenericFilterBean {
                 }
             }
             PerunUser user = FiltersUtils.getPerunUser(request, perunOidcConfig, perunAdapter);
-            FilterParams params = new FilterParams(client, facility, user);
+            FilterParams params = prefetchAttributes(filters, client, facility, user);
             for (PerunRequestFilter filter : filters) {
-                if (!filter.doFilter(servletRequest, servletResponse, params)) {
+                if (!filter.execute(servletRequest, servletResponse, params)) {
                     return;
                 }
             }
+        } else {
+            log.trace("{} - no filter applies to the request, skipping resolution of client, facility and user",
+                    CallPerunFiltersFilter.class.getSimpleName());
         }
         filterChain.doFilter(servletRequest, servletResponse);
     }
 
+    /**
+     * Fetch attributes required by the filters at once, facility and user attributes concurrently.
+     * If the fetch fails, the filters fetch the attributes on their own.
+     */
+    private FilterParams prefetchAttributes(List<PerunRequestFilter> filters, ClientDetailsEntity client,
+                                            Facility facility, PerunUser user)
+    {
+        Set<String> facilityAttrNames = new HashSet<>();
+        Set<String> userAttrNames = new HashSet<>();
+        for (PerunRequestFilter filter : filters) {
+            facilityAttrNames.addAll(filter.getRequiredFacilityAttributes());
+            userAttrNames.addAll(filter.getRequiredUserAttributes());
+        }
+
+        facilityAttrNames.remove(null);
+        userAttrNames.remove(null);
+
+        CompletableFuture<Map<String, PerunAttributeValue>> facilityAttrs =
+                CompletableFuture.completedFuture(Collections.emptyMap());
+        if (facility != null && facility.getId() != null && !facilityAttrNames.isEmpty()) {
+            facilityAttrs = perunAdapter.getFacilityAttributeValuesAsync(facility.getId(), facilityAttrNames);
+        }
+        CompletableFuture<Map<String, PerunAttributeValue>> userAttrs =
+                CompletableFuture.completedFuture(Collections.emptyMap());
+        if (user != null && user.getId() != null && !userAttrNames.isEmpty()) {
+            userAttrs = perunAdapter.getUserAttributeValuesAsync(user.getId(), userAttrNames);
+        }
+
+        return new FilterParams(client, facility, user, joinAttributes(facilityAttrs, "facility"),
+                joinAttributes(userAttrs, "user"));
+    }
+
+    private Map<String, PerunAttributeValue> joinAttributes(CompletableFuture<Map<String, PerunAttributeValue>> future,
+                                                            String entity)
+    {
+        try {
+            Map<String, PerunAttributeValue> attrs = future.join();
+            return attrs != null ? attrs : Collections.emptyMap();
+        } catch (Exception e) {
+            log.warn("{} - could not prefetch {} attributes for filters",
+                    CallPerunFiltersFilter.class.getSimpleName(), entity, e);
+            return Collections.emptyMap();
+        }
+    }
+
 }
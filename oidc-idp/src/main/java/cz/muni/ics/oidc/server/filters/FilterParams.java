@@ -1,19 +1,34 @@
 package cz.muni.ics.oidc.server.filters;
 
 import cz.muni.ics.oidc.models.Facility;
+import cz.muni.ics.oidc.models.PerunAttributeValue;
 import cz.muni.ics.oidc.models.PerunUser;
 import org.mitre.oauth2.model.ClientDetailsEntity;
 
+import java.util.Collections;
+import java.util.Map;
+
 public class FilterParams {
 
     private final ClientDetailsEntity client;
     private final Facility facility;
     private final PerunUser user;
+    private final Map<String, PerunAttributeValue> facilityAttributes;
+    private final Map<String, PerunAttributeValue> userAttributes;
 
     public FilterParams(ClientDetailsEntity client, Facility facility, PerunUser user) {
+        this(client, facility, user, Collections.emptyMap(), Collections.emptyMap());
+    }
+
+    public FilterParams(ClientDetailsEntity client, Facility facility, PerunUser user,
+                        Map<String, PerunAttributeValue> facilityAttributes,
+                        Map<String, PerunAttributeValue> userAttributes)
+    {
         this.client = client;
         this.facility = facility;
         this.user = user;
+        this.facilityAttributes = facilityAttributes;
+        this.userAttributes = userAttributes;
     }
 
     public ClientDetailsEntity getClient() {
@@ -28,6 +43,22 @@ public class FilterParams {
         return user;
     }
 
+    /**
+     * Get facility attributes prefetched for the filters.
+     * @return Map of attrName:PerunAttributeValue (filled or empty)
+     */
+    public Map<String, PerunAttributeValue> getFacilityAttributes() {
+        return facilityAttributes;
+    }
+
+    /**
+     * Get user attributes prefetched for the filters.
+     * @return Map of attrName:PerunAttributeValue (filled or empty)
+     */
+    public Map<String, PerunAttributeValue> getUserAttributes() {
+        return userAttributes;
+    }
+
     public String getClientIdentifier() {
         if (client != null) {
             return client.getClientId();
@@ -25,6 +25,8 @@ import javax.servlet.http.HttpServletResponse;
 import java.security.Principal;
 import java.util.AbstractMap;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.stream.Collectors;
@@ -60,6 +62,57 @@ public class FiltersUtils {
 		return requestMap;
 	}
 
+	/**
+	 * Get facility attributes prefetched in the filter params, or fetch them if some of them have not been prefetched.
+	 *
+	 * @param params params of the filter
+	 * @param perunAdapter adapter fetching missing attributes
+	 * @param attrNames names of the attributes
+	 * @return Map of attrName:PerunAttributeValue (filled or empty)
+	 */
+	public static Map<String, PerunAttributeValue> getFacilityAttributeValues(FilterParams params,
+																			  PerunAdapter perunAdapter,
+																			  Collection<String> attrNames)
+	{
+		Map<String, PerunAttributeValue> prefetched = params.getFacilityAttributes();
+		if (prefetched.keySet().containsAll(attrNames)) {
+			return prefetched;
+		}
+		return perunAdapter.getFacilityAttributeValues(params.getFacility(), attrNames);
+	}
+
+	/**
+	 * Get facility attribute prefetched in the filter params, or fetch it if it has not been prefetched.
+	 *
+	 * @param params params of the filter
+	 * @param perunAdapter adapter fetching missing attribute
+	 * @param attrName name of the attribute
+	 * @return attribute value or null
+	 */
+	public static PerunAttributeValue getFacilityAttributeValue(FilterParams params, PerunAdapter perunAdapter,
+																String attrName)
+	{
+		return getFacilityAttributeValues(params, perunAdapter, Collections.singleton(attrName)).get(attrName);
+	}
+
+	/**
+	 * Get user attribute prefetched in the filter params, or fetch it if it has not been prefetched.
+	 *
+	 * @param params params of the filter
+	 * @param perunAdapter adapter fetching missing attribute
+	 * @param attrName name of the attribute
+	 * @return attribute value or null
+	 */
+	public static PerunAttributeValue getUserAttributeValue(FilterParams params, PerunAdapter perunAdapter,
+															String attrName)
+	{
+		Map<String, PerunAttributeValue> prefetched = params.getUserAttributes();
+		if (prefetched.containsKey(attrName)) {
+			return prefetched.get(attrName);
+		}
+		return perunAdapter.getUserAttributeValue(params.getUser().getId(), attrName);
+	}
+
 	/**
 	 * Extract client from request
 	 *
@@ -0,0 +1,183 @@
+package cz.muni.ics.oidc.server.filters;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Cache of membership decisions made by the filters (ValidUserFilter, PerunAuthorizationFilter), keyed by user,
+ * facility and the set of rules evaluated by the filter. Positive and negative decisions are kept for separate
+ * periods, so the user gets access soon after being added to the required groups. TTL of 0 disables caching
+ * of the decisions.
+ *
+ * Entries are invalidated by UserInfoChangeEventConsumer together with the cached UserInfo objects. Without
+ * the events, a user removed from the required groups keeps access until the positive decision expires,
+ * so the positive decisions are not cached by default.
+ *
+ * @author Pavol Pluta <pavol.pluta1@gmail.com>
+ */
+public class MembershipDecisionCache {
+
+	private static final Logger log = LoggerFactory.getLogger(MembershipDecisionCache.class);
+
+	private final Cache<DecisionKey, Boolean> positive;
+	private final Cache<DecisionKey, Boolean> negative;
+
+	private final AtomicLong hitCount = new AtomicLong();
+	private final AtomicLong missCount = new AtomicLong();
+
+	public MembershipDecisionCache(long maxSize, long positiveTtlSecs, long negativeTtlSecs) {
+		this.positive = build(maxSize, positiveTtlSecs);
+		this.negative = build(maxSize, negativeTtlSecs);
+		log.info("Membership decision cache - maxSize: {}, positiveTtl: {}s, negativeTtl: {}s",
+				maxSize, positiveTtlSecs, negativeTtlSecs);
+	}
+
+	/**
+	 * Get decision about access of the user, either cached or made by the given function.
+	 * @param userId ID of the user.
+	 * @param facilityId ID of the facility.
+	 * @param rules Identification of the rules the decision is based on (e.g. name of the filter and its options).
+	 * @param decision Function deciding about the access.
+	 * @return TRUE if the user can access, FALSE otherwise.
+	 */
+	public boolean decide(Long userId, Long facilityId, String rules, Supplier<Boolean> decision) {
+		DecisionKey key = new DecisionKey(userId, facilityId, rules);
+		Boolean cached = null;
+		if (positive != null) {
+			cached = positive.getIfPresent(key);
+		}
+		if (cached == null && negative != null) {
+			cached = negative.getIfPresent(key);
+		}
+		if (cached != null) {
+			long hits = hitCount.incrementAndGet();
+			log.debug("{} - cached decision for user {} and facility {}: {} (hit rate {})",
+					rules, userId, facilityId, cached, hitRate(hits, missCount.get()));
+			return cached;
+		}
+
+		long misses = missCount.incrementAndGet();
+		boolean result = Boolean.TRUE.equals(decision.get());
+		Cache<DecisionKey, Boolean> target = result ? positive : negative;
+		if (target != null) {
+			target.put(key, result);
+		}
+		log.debug("{} - decision for user {} and facility {}: {} (hit rate {})",
+				rules, userId, facilityId, result, hitRate(hitCount.get(), misses));
+		return result;
+	}
+
+	/**
+	 * Forget decisions about the user.
+	 * @param userId ID of the user.
+	 */
+	public void invalidateUser(long userId) {
+		log.debug("invalidating membership decisions of user {}", userId);
+		invalidateIf(key -> Objects.equals(key.userId, userId));
+	}
+
+	/**
+	 * Forget decisions about access to the facility.
+	 * @param facilityId ID of the facility.
+	 */
+	public void invalidateFacility(long facilityId) {
+		log.debug("invalidating membership decisions for facility {}", facilityId);
+		invalidateIf(key -> Objects.equals(key.facilityId, facilityId));
+	}
+
+	/**
+	 * Forget all decisions (e.g. after change of a group, as its members are not known).
+	 */
+	public void invalidateAll() {
+		log.debug("invalidating all membership decisions");
+		if (positive != null) {
+			positive.invalidateAll();
+		}
+		if (negative != null) {
+			negative.invalidateAll();
+		}
+	}
+
+	/**
+	 * Get statistics of the cache.
+	 * @return Map of statistics.
+	 */
+	public Map<String, Object> getStats() {
+		long hits = hitCount.get();
+		long misses = missCount.get();
+		Map<String, Object> stats = new LinkedHashMap<>();
+		stats.put("positiveSize", positive != null ? positive.size() : 0);
+		stats.put("negativeSize", negative != null ? negative.size() : 0);
+		stats.put("hitCount", hits);
+		stats.put("missCount", misses);
+		stats.put("hitRate", hitRate(hits, misses));
+		return stats;
+	}
+
+	private void invalidateIf(Predicate<DecisionKey> predicate) {
+		if (positive != null) {
+			positive.asMap().keySet().removeIf(predicate);
+		}
+		if (negative != null) {
+			negative.asMap().keySet().removeIf(predicate);
+		}
+	}
+
+	private double hitRate(long hits, long misses) {
+		long requests = hits + misses;
+		return requests > 0 ? (double) hits / requests : 0;
+	}
+
+	private Cache<DecisionKey, Boolean> build(long maxSize, long ttlSecs) {
+		if (ttlSecs <= 0) {
+			return null;
+		}
+		return CacheBuilder.newBuilder()
+				.maximumSize(maxSize)
+				.expireAfterWrite(ttlSecs, TimeUnit.SECONDS)
+				.build();
+	}
+
+	private static class DecisionKey {
+
+		private final Long userId;
+		private final Long facilityId;
+		private final String rules;
+
+		DecisionKey(Long userId, Long facilityId, String rules) {
+			this.userId = userId;
+			this.facilityId = facilityId;
+			this.rules = rules;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) {
+				return true;
+			} else if (o == null || getClass() != o.getClass()) {
+				return false;
+			}
+			DecisionKey that = (DecisionKey) o;
+			return Objects.equals(userId, that.userId)
+					&& Objects.equals(facilityId, that.facilityId)
+					&& Objects.equals(rules, that.rules);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(userId, facilityId, rules);
+		}
+
+	}
+
+}
@@ -3,13 +3,21 @@ package cz.muni.ics.oidc.server.filters;
 import cz.muni.ics.oidc.BeanUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.security.web.util.matcher.RequestMatcher;
 import org.springframework.util.StringUtils;
 
+import javax.servlet.http.HttpServletRequest;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
 
 /**
  * Class that contains all custom Perun request filters. Filters are stored in the LinkedList
@@ -18,6 +26,9 @@ import java.util.Properties;
  * Filters are configured from configuration file in following way:
  * filter.names=filterName1,filterName2,...
  *
+ * At startup, filters are grouped by the request matchers they apply to (routing table), so the filters
+ * applicable to the request are found without resolving client, facility or user of the request.
+ *
  * @see cz.muni.ics.oidc.server.filters.PerunRequestFilter for configuration of filter
  *
  * @author Dominik Frantisek Bucik <bucik@ics.muni.cz>
@@ -31,6 +42,7 @@ public class PerunFiltersContext {
 	private static final String PREFIX = "filter.";
 
 	private List<PerunRequestFilter> filters;
+	private final Map<RequestMatcher, Set<PerunRequestFilter>> routes = new LinkedHashMap<>();
 	private Properties properties;
 	private BeanUtil beanUtil;
 
@@ -48,12 +60,66 @@ public class PerunFiltersContext {
 			filters.add(requestFilter);
 			log.debug("--------------------------------");
 		}
+
+		for (PerunRequestFilter filter : filters) {
+			if (filter != null) {
+				routes.computeIfAbsent(filter.getRequestMatcher(), k -> new HashSet<>()).add(filter);
+			}
+		}
+		routes.forEach((matcher, routed) -> log.debug("Requests matching {} are routed to {} filter(s)",
+				matcher, routed.size()));
 	}
 
 	public List<PerunRequestFilter> getFilters() {
 		return filters;
 	}
 
+	/**
+	 * Destroy all filters, so they release their resources.
+	 */
+	public void destroy() {
+		for (PerunRequestFilter filter : filters) {
+			if (filter == null) {
+				continue;
+			}
+			try {
+				filter.destroy();
+			} catch (RuntimeException e) {
+				log.warn("Failed to destroy filter {}", filter.getClass().getSimpleName(), e);
+			}
+		}
+	}
+
+	/**
+	 * Get filters applicable to the request - matched by the routing table and not skipped for the client
+	 * or the user of the request. Filters are returned in the configured order.
+	 *
+	 * @param request request
+	 * @return filters to be executed, empty list if no filter applies to the request
+	 */
+	public List<PerunRequestFilter> getFilters(HttpServletRequest request) {
+		Set<PerunRequestFilter> matched = null;
+		for (Map.Entry<RequestMatcher, Set<PerunRequestFilter>> route : routes.entrySet()) {
+			if (route.getKey().matches(request)) {
+				if (matched == null) {
+					matched = new HashSet<>();
+				}
+				matched.addAll(route.getValue());
+			}
+		}
+		if (matched == null) {
+			return Collections.emptyList();
+		}
+
+		List<PerunRequestFilter> applicable = new ArrayList<>();
+		for (PerunRequestFilter filter : filters) {
+			if (filter != null && matched.contains(filter) && !filter.skip(request)) {
+				applicable.add(filter);
+			}
+		}
+		return applicable;
+	}
+
 	private PerunRequestFilter loadFilter(String filterName) {
 		String propPrefix = PerunFiltersContext.PREFIX + filterName;
 		String filterClass = properties.getProperty(propPrefix + FILTER_CLASS, null);
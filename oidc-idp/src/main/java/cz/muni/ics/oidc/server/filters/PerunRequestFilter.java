@@ -10,6 +10,7 @@ import javax.servlet.ServletResponse;
 import javax.servlet.http.HttpServletRequest;
 import java.io.IOException;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
 
@@ -81,19 +82,63 @@ public abstract class PerunRequestFilter {
     public boolean doFilter(ServletRequest req, ServletResponse res, FilterParams params) throws IOException {
         HttpServletRequest request = (HttpServletRequest) req;
         // skip everything that's not an authorize URL
-        if (!requestMatcher.matches(request)) {
+        if (!getRequestMatcher().matches(request)) {
             log.debug("{} - filter has been skipped, did not match '/authorize' the request", filterName);
             return true;
         }
         if (!skip(request)) {
-            log.trace("{} - executing filter", filterName);
-            return this.process(req, res, params);
+            return this.execute(req, res, params);
         } else {
             return true;
         }
     }
 
-    private boolean skip(HttpServletRequest request) {
+    /**
+     * Get matcher of the requests the filter applies to. Filters are routed by the matchers in PerunFiltersContext,
+     * so the requests no filter applies to do not cause any calls to Perun.
+     *
+     * @return matcher of the requests, '/authorize' requests by default
+     */
+    public RequestMatcher getRequestMatcher() {
+        return requestMatcher;
+    }
+
+    /**
+     * Get names of facility attributes the filter needs. CallPerunFiltersFilter fetches attributes of all
+     * the filters applicable to the request at once and passes them in FilterParams.
+     *
+     * @return names of facility attributes
+     */
+    public Set<String> getRequiredFacilityAttributes() {
+        return Collections.emptySet();
+    }
+
+    /**
+     * Get names of user attributes the filter needs. CallPerunFiltersFilter fetches attributes of all
+     * the filters applicable to the request at once and passes them in FilterParams.
+     *
+     * @return names of user attributes
+     */
+    public Set<String> getRequiredUserAttributes() {
+        return Collections.emptySet();
+    }
+
+    /**
+     * Release resources held by the filter (e.g. background threads) when the application context is closed.
+     * Does nothing by default.
+     */
+    public void destroy() {
+    }
+
+    /**
+     * Execute the filter for the request already matched by the request matcher and not skipped.
+     */
+    boolean execute(ServletRequest req, ServletResponse res, FilterParams params) throws IOException {
+        log.trace("{} - executing filter", filterName);
+        return this.process(req, res, params);
+    }
+
+    boolean skip(HttpServletRequest request) {
         String sub = request.getUserPrincipal().getName();
         String clientId = request.getParameter(PerunFilterConstants.PARAM_CLIENT_ID);
 
@@ -0,0 +1,41 @@
+package cz.muni.ics.oidc.server.filters.impl;
+
+import cz.muni.ics.oidc.server.adapters.PerunAdapterRequestMemo;
+import org.springframework.web.filter.GenericFilterBean;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import java.io.IOException;
+
+/**
+ * Opens request scoped memo of the calls to PerunAdapter for the rest of the filter chain.
+ *
+ * @see PerunAdapterRequestMemo
+ *
+ * @author Pavol Pluta <pavol.pluta1@gmail.com>
+ */
+public class PerunAdapterMemoFilter extends GenericFilterBean {
+
+    private final PerunAdapterRequestMemo memo;
+
+    public PerunAdapterMemoFilter(PerunAdapterRequestMemo memo) {
+        this.memo = memo;
+    }
+
+    @Override
+    public void doFilter(ServletRequest servletRequest, ServletResponse servletResponse, FilterChain filterChain)
+            throws IOException, ServletException
+    {
+        boolean opened = memo.open();
+        try {
+            filterChain.doFilter(servletRequest, servletResponse);
+        } finally {
+            if (opened) {
+                memo.close();
+            }
+        }
+    }
+
+}
@@ -8,6 +8,7 @@ import cz.muni.ics.oidc.server.adapters.PerunAdapter;
 import cz.muni.ics.oidc.server.configurations.FacilityAttrsConfig;
 import cz.muni.ics.oidc.server.filters.FilterParams;
 import cz.muni.ics.oidc.server.filters.FiltersUtils;
+import cz.muni.ics.oidc.server.filters.MembershipDecisionCache;
 import cz.muni.ics.oidc.server.filters.PerunRequestFilter;
 import cz.muni.ics.oidc.server.filters.PerunRequestFilterParams;
 import org.slf4j.Logger;
@@ -18,6 +19,7 @@ import javax.servlet.ServletResponse;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * Authorization filter. Decides if user can access the service based on his/hers
@@ -36,6 +38,7 @@ public class PerunAuthorizationFilter extends PerunRequestFilter {
 
 	private final PerunAdapter perunAdapter;
 	private final FacilityAttrsConfig facilityAttrsConfig;
+	private final MembershipDecisionCache membershipDecisionCache;
 	private final String filterName;
 
 	public PerunAuthorizationFilter(PerunRequestFilterParams params) {
@@ -43,9 +46,15 @@ public class PerunAuthorizationFilter extends PerunRequestFilter {
 		BeanUtil beanUtil = params.getBeanUtil();
 		this.perunAdapter = beanUtil.getBean(PerunAdapter.class);
 		this.facilityAttrsConfig = beanUtil.getBean(FacilityAttrsConfig.class);
+		this.membershipDecisionCache = beanUtil.getBean(MembershipDecisionCache.class);
 		this.filterName = params.getFilterName();
 	}
 
+	@Override
+	public Set<String> getRequiredFacilityAttributes() {
+		return facilityAttrsConfig.getMembershipAttrNames();
+	}
+
 	@Override
 	protected boolean process(ServletRequest req, ServletResponse res, FilterParams params) {
 		HttpServletRequest request = (HttpServletRequest) req;
@@ -63,23 +72,26 @@ public class PerunAuthorizationFilter extends PerunRequestFilter {
 			return true;
 		}
 
+		Map<String, PerunAttributeValue> facilityAttributes = FiltersUtils.getFacilityAttributeValues(
+				params, perunAdapter, facilityAttrsConfig.getMembershipAttrNames());
+
 		return this.decideAccess(facility, user, request, response, params.getClientIdentifier(),
-				perunAdapter, facilityAttrsConfig);
+				perunAdapter, facilityAttrsConfig, facilityAttributes);
 	}
 
 	private boolean decideAccess(Facility facility, PerunUser user, HttpServletRequest request,
 								 HttpServletResponse response, String clientIdentifier, PerunAdapter perunAdapter,
-								 FacilityAttrsConfig facilityAttrsConfig)
+								 FacilityAttrsConfig facilityAttrsConfig,
+								 Map<String, PerunAttributeValue> facilityAttributes)
 	{
-		Map<String, PerunAttributeValue> facilityAttributes = perunAdapter.getFacilityAttributeValues(
-				facility, facilityAttrsConfig.getMembershipAttrNames());
-
 		if (!facilityAttributes.get(facilityAttrsConfig.getCheckGroupMembershipAttr()).valueAsBoolean()) {
 			log.debug("{} - skip filter execution: membership check not requested", filterName);
 			return true;
 		}
 
-		if (perunAdapter.canUserAccessBasedOnMembership(facility, user.getId())) {
+		boolean canAccess = membershipDecisionCache.decide(user.getId(), facility.getId(), filterName,
+				() -> perunAdapter.canUserAccessBasedOnMembership(facility, user.getId()));
+		if (canAccess) {
 			log.info("{} - user allowed to access the service", filterName);
 			return true;
 		} else {
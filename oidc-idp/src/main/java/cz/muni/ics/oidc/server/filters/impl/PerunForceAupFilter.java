@@ -26,11 +26,16 @@ import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 import static cz.muni.ics.oidc.web.controllers.AupController.APPROVED;
 
@@ -90,6 +95,16 @@ public class PerunForceAupFilter extends PerunRequestFilter {
         this.filterName = params.getFilterName();
     }
 
+    @Override
+    public Set<String> getRequiredFacilityAttributes() {
+        return new HashSet<>(Arrays.asList(perunFacilityRequestedAupsAttrName, perunFacilityVoShortNamesAttrName));
+    }
+
+    @Override
+    public Set<String> getRequiredUserAttributes() {
+        return Collections.singleton(perunUserAupsAttrName);
+    }
+
     @Override
     protected boolean process(ServletRequest req, ServletResponse res, FilterParams params) throws IOException {
         HttpServletRequest request = (HttpServletRequest) req;
@@ -102,7 +117,7 @@ public class PerunForceAupFilter extends PerunRequestFilter {
             return true;
         }
 
-        PerunUser user = FiltersUtils.getPerunUser(request, perunOidcConfig, perunAdapter);
+        PerunUser user = params.getUser();
         if (user == null || user.getId() == null) {
             log.debug("{} - skip filter execution: no user provider", filterName);
             return true;
@@ -116,7 +131,8 @@ public class PerunForceAupFilter extends PerunRequestFilter {
 
         List<String> attrsToFetch = new ArrayList<>(
                 Arrays.asList(perunFacilityRequestedAupsAttrName, perunFacilityVoShortNamesAttrName));
-        Map<String, PerunAttributeValue> facilityAttributes = perunAdapter.getFacilityAttributeValues(facility, attrsToFetch);
+        Map<String, PerunAttributeValue> facilityAttributes = FiltersUtils.getFacilityAttributeValues(params,
+                perunAdapter, attrsToFetch);
 
         if (facilityAttributes == null) {
             log.debug("{} - skip filter execution: could not fetch attributes '{}' for facility '{}'",
@@ -133,7 +149,7 @@ public class PerunForceAupFilter extends PerunRequestFilter {
         Map<String, Aup> newAups;
 
         try {
-            newAups = getAupsToApprove(user, facilityAttributes);
+            newAups = getAupsToApprove(params, user, facilityAttributes);
         } catch (ParseException | IOException e) {
             log.warn("{} - caught parse exception when processing AUPs to approve", filterName);
             log.trace("{} - details:", filterName, e);
@@ -159,12 +175,14 @@ public class PerunForceAupFilter extends PerunRequestFilter {
         return true;
     }
 
-    private Map<String, Aup> getAupsToApprove(PerunUser user, Map<String, PerunAttributeValue> facilityAttributes)
+    private Map<String, Aup> getAupsToApprove(FilterParams params, PerunUser user,
+                                              Map<String, PerunAttributeValue> facilityAttributes)
             throws ParseException, IOException
     {
         Map<String, Aup> aupsToApprove= new LinkedHashMap<>();
 
-        PerunAttributeValue userAupsAttr = perunAdapter.getUserAttributeValue(user.getId(), perunUserAupsAttrName);
+        PerunAttributeValue userAupsAttr = FiltersUtils.getUserAttributeValue(params, perunAdapter,
+                perunUserAupsAttrName);
         if (perunOidcConfig.isFillMissingUserAttrs() && (userAupsAttr == null || userAupsAttr.isNullValue())) {
             userAupsAttr = perunAdapter.getAdapterFallback().getUserAttributeValue(user.getId(), perunUserAupsAttrName);
         }
@@ -266,10 +284,17 @@ public class PerunForceAupFilter extends PerunRequestFilter {
         Map<String, List<Aup>> voAups = new HashMap<>();
 
         if (voShortNames != null && !voShortNames.isEmpty()) {
+            // AUP attributes of all the VOs are requested at once, results are collected afterwards
+            Map<String, CompletableFuture<Map<String, PerunAttributeValue>>> voAupAttrs = new LinkedHashMap<>();
             for (String voShortName : voShortNames) {
                 Long voId = perunAdapter.getVoByShortName(voShortName).getId();
+                voAupAttrs.put(voShortName, perunAdapter.getVoAttributeValuesAsync(voId,
+                        Collections.singletonList(perunVoAupAttrName)));
+            }
 
-                PerunAttributeValue voAupAttr = perunAdapter.getVoAttributeValue(voId, perunVoAupAttrName);
+            for (Map.Entry<String, CompletableFuture<Map<String, PerunAttributeValue>>> entry : voAupAttrs.entrySet()) {
+                String voShortName = entry.getKey();
+                PerunAttributeValue voAupAttr = joinVoAupAttr(entry.getValue());
                 if (voAupAttr == null || voAupAttr.valueAsString() == null) {
                     continue;
                 }
@@ -284,6 +309,18 @@ public class PerunForceAupFilter extends PerunRequestFilter {
         return voAups;
     }
 
+    private PerunAttributeValue joinVoAupAttr(CompletableFuture<Map<String, PerunAttributeValue>> future) {
+        try {
+            Map<String, PerunAttributeValue> attrs = future.join();
+            return attrs != null ? attrs.get(perunVoAupAttrName) : null;
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
     private Map<String, List<Aup>> convertToMapKeyToListOfAups(Map<String, String> keyToListOfAupsString)
             throws IOException
     {
@@ -25,6 +25,7 @@ import java.time.format.DateTimeParseException;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 
 import static cz.muni.ics.oidc.server.filters.PerunFilterConstants.PARAM_FORCE_AUTHN;
 import static cz.muni.ics.oidc.server.filters.PerunFilterConstants.PARAM_REASON;
@@ -83,6 +84,11 @@ public class PerunIsCesnetEligibleFilter extends PerunRequestFilter {
         this.filterName = params.getFilterName();
     }
 
+    @Override
+    public Set<String> getRequiredUserAttributes() {
+        return Collections.singleton(isCesnetEligibleAttrName);
+    }
+
     @Override
     protected boolean process(ServletRequest req, ServletResponse res, FilterParams params) {
         HttpServletRequest request = (HttpServletRequest) req;
@@ -100,7 +106,7 @@ public class PerunIsCesnetEligibleFilter extends PerunRequestFilter {
         }
 
         String reason = REASON_NOT_SET;
-        PerunAttributeValue attrValue = perunAdapter.getUserAttributeValue(user.getId(), isCesnetEligibleAttrName);
+        PerunAttributeValue attrValue = FiltersUtils.getUserAttributeValue(params, perunAdapter, isCesnetEligibleAttrName);
         if (attrValue != null) {
             LocalDateTime timeStamp;
             try {
@@ -17,8 +17,10 @@ import javax.servlet.ServletResponse;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 
 import static cz.muni.ics.oidc.server.filters.PerunFilterConstants.PARAM_TARGET;
 import static cz.muni.ics.oidc.web.controllers.IsTestSpController.IS_TEST_SP_APPROVED_SESS;
@@ -52,6 +54,11 @@ public class PerunIsTestSpFilter extends PerunRequestFilter {
         this.filterName = params.getFilterName();
     }
 
+    @Override
+    public Set<String> getRequiredFacilityAttributes() {
+        return Collections.singleton(isTestSpAttrName);
+    }
+
     @Override
     protected boolean process(ServletRequest req, ServletResponse res, FilterParams params) throws IOException {
         HttpServletRequest request = (HttpServletRequest) req;
@@ -65,7 +72,7 @@ public class PerunIsTestSpFilter extends PerunRequestFilter {
             return true;
         }
 
-        PerunAttributeValue attrValue = perunAdapter.getFacilityAttributeValue(facility.getId(), isTestSpAttrName);
+        PerunAttributeValue attrValue = FiltersUtils.getFacilityAttributeValue(params, perunAdapter, isTestSpAttrName);
         if (attrValue == null) {
             log.debug("{} - skip execution: attribute {} has null value", filterName, isTestSpAttrName);
             return true;
@@ -39,6 +39,16 @@ import java.time.LocalDate;
  *         to idp name (depends on DataSource bean mitreIdStats)
  *     <li><b>filter.[name].serviceProvidersMapTableName</b> - Name of the table with mapping of client_id (SP)
  *         to client name (depends on DataSource bean mitreIdStats)</li>
+ *     <li><b>filter.[name].writeBehind</b> - If TRUE, logins are aggregated in memory and written to the database
+ *         by background thread (see {@link ProxyStatisticsWriter}), so the login does not wait for the database.
+ *         Defaults to FALSE</li>
+ *     <li><b>filter.[name].flushIntervalMs</b> - Milliseconds between writes of the aggregated logins,
+ *         defaults to 5000</li>
+ *     <li><b>filter.[name].batchSize</b> - Maximum number of rows written by one statement, the logins are written
+ *         immediately when this number of rows is pending. Defaults to 500</li>
+ *     <li><b>filter.[name].queueCapacity</b> - Maximum number of pending rows, defaults to 10000</li>
+ *     <li><b>filter.[name].overflowPolicy</b> - What to do when the queue is full: DROP the login or BLOCK
+ *         the request until the pending rows are written. Defaults to DROP</li>
  * </ul>
  *
  * @author Dominik Baránek <baranek@ics.muni.cz>
@@ -54,6 +64,11 @@ public class ProxyStatisticsFilter extends PerunRequestFilter {
 	private static final String STATISTICS_TABLE_NAME = "statisticsTableName";
 	private static final String IDENTITY_PROVIDERS_MAP_TABLE_NAME = "identityProvidersMapTableName";
 	private static final String SERVICE_PROVIDERS_MAP_TABLE_NAME = "serviceProvidersMapTableName";
+	private static final String WRITE_BEHIND = "writeBehind";
+	private static final String FLUSH_INTERVAL_MS = "flushIntervalMs";
+	private static final String BATCH_SIZE = "batchSize";
+	private static final String QUEUE_CAPACITY = "queueCapacity";
+	private static final String OVERFLOW_POLICY = "overflowPolicy";
 
 	private final String idpNameAttributeName;
 	private final String idpEntityIdAttributeName;
@@ -65,6 +80,9 @@ public class ProxyStatisticsFilter extends PerunRequestFilter {
 	private final DataSource mitreIdStats;
 	private final PerunOidcConfig config;
 	private final String filterName;
+	private final ProxyStatisticsWriter writer;
+	private final StatisticsDimensionCache idpDimensions = new StatisticsDimensionCache();
+	private final StatisticsDimensionCache spDimensions = new StatisticsDimensionCache();
 
 	public ProxyStatisticsFilter(PerunRequestFilterParams params) {
 		super(params);
@@ -78,6 +96,32 @@ public class ProxyStatisticsFilter extends PerunRequestFilter {
 		this.identityProvidersMapTableName = params.getProperty(IDENTITY_PROVIDERS_MAP_TABLE_NAME);
 		this.serviceProvidersMapTableName = params.getProperty(SERVICE_PROVIDERS_MAP_TABLE_NAME);
 		this.filterName = params.getFilterName();
+
+		if (Boolean.parseBoolean(params.getProperty(WRITE_BEHIND))) {
+			long flushIntervalMs = Long.parseLong(getProperty(params, FLUSH_INTERVAL_MS, "5000"));
+			int batchSize = Integer.parseInt(getProperty(params, BATCH_SIZE, "500"));
+			int queueCapacity = Integer.parseInt(getProperty(params, QUEUE_CAPACITY, "10000"));
+			ProxyStatisticsWriter.OverflowPolicy overflowPolicy = ProxyStatisticsWriter.OverflowPolicy.valueOf(
+					getProperty(params, OVERFLOW_POLICY, "DROP").toUpperCase());
+			this.writer = new ProxyStatisticsWriter(mitreIdStats, statisticsTableName, identityProvidersMapTableName,
+					serviceProvidersMapTableName, idpDimensions, spDimensions, flushIntervalMs, batchSize,
+					queueCapacity, overflowPolicy, filterName);
+			log.info("{} - logins are written behind every {} ms (batch {}, capacity {}, overflow {})", filterName,
+					flushIntervalMs, batchSize, queueCapacity, overflowPolicy);
+		} else {
+			this.writer = null;
+		}
+	}
+
+	@Override
+	public void destroy() {
+		if (writer != null) {
+			writer.stop();
+		}
+	}
+
+	private String getProperty(PerunRequestFilterParams params, String name, String defaultValue) {
+		return params.hasProperty(name) ? params.getProperty(name).trim() : defaultValue;
 	}
 
 	@Override
@@ -119,14 +163,27 @@ public class ProxyStatisticsFilter extends PerunRequestFilter {
 			return;
 		}
 
+		if (writer != null) {
+			writer.addLogin(date, idpEntityId, idpName, spIdentifier, spName, userId);
+			return;
+		}
+
 		String insertLoginQuery = "INSERT INTO " + statisticsTableName + "(day, idpId, spId, user, logins)" +
 				" VALUES(?, ?, ?, ?, '1') ON DUPLICATE KEY UPDATE logins = logins + 1";
 
 		try (Connection c = mitreIdStats.getConnection()) {
-			insertIdpMap(c, idpEntityId, idpName);
-			insertSpMap(c, spIdentifier, spName);
-			int idpId = extractIdpId(c, idpEntityId);
-			int spId = extractSpId(c, spIdentifier);
+			Integer idpId = idpDimensions.getId(idpEntityId, idpName);
+			if (idpId == null) {
+				insertIdpMap(c, idpEntityId, idpName);
+				idpId = extractIdpId(c, idpEntityId);
+				idpDimensions.put(idpEntityId, idpId, idpName);
+			}
+			Integer spId = spDimensions.getId(spIdentifier, spName);
+			if (spId == null) {
+				insertSpMap(c, spIdentifier, spName);
+				spId = extractSpId(c, spIdentifier);
+				spDimensions.put(spIdentifier, spId, spName);
+			}
 
 			try (PreparedStatement preparedStatement = c.prepareStatement(insertLoginQuery)) {
 				preparedStatement.setDate(1, Date.valueOf(date));
@@ -0,0 +1,421 @@
+package cz.muni.ics.oidc.server.filters.impl;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Write-behind of logins collected by {@link ProxyStatisticsFilter}. Logins are aggregated in memory per
+ * (day, IdP, SP, user) and written by background thread in batches of multi-row upserts, so the login does not
+ * wait for the statistics database.
+ *
+ * The number of pending rows is bounded by the capacity. When it is reached, the login is either dropped
+ * (policy DROP) or the request thread writes the pending rows itself (policy BLOCK). When the flush made
+ * by the request thread fails, the login is dropped, so the capacity is never exceeded. Logins of one flush
+ * are written in one transaction. Rows of the failed flush are returned to the queue (if there is room for them)
+ * and written by the next flush.
+ *
+ * The writer has to be stopped by {@link #stop()} when the application context is closed, the pending rows
+ * are written then.
+ *
+ * @author Pavol Pluta <pavol.pluta1@gmail.com>
+ */
+@SuppressWarnings("SqlResolve")
+public class ProxyStatisticsWriter {
+
+	private static final Logger log = LoggerFactory.getLogger(ProxyStatisticsWriter.class);
+
+	public enum OverflowPolicy {
+		DROP, BLOCK
+	}
+
+	private final DataSource dataSource;
+	private final String statisticsTableName;
+	private final String identityProvidersMapTableName;
+	private final String serviceProvidersMapTableName;
+	private final int capacity;
+	private final int batchSize;
+	private final OverflowPolicy overflowPolicy;
+	private final String filterName;
+	private final StatisticsDimensionCache idpDimensions;
+	private final StatisticsDimensionCache spDimensions;
+
+	private final Map<LoginKey, Long> pending = new ConcurrentHashMap<>();
+	private final Map<String, Optional<String>> pendingIdpNames = new ConcurrentHashMap<>();
+	private final Map<String, Optional<String>> pendingSpNames = new ConcurrentHashMap<>();
+	private final ScheduledExecutorService executor;
+	private final AtomicBoolean flushScheduled = new AtomicBoolean();
+	private final AtomicBoolean stopped = new AtomicBoolean();
+
+	private final AtomicLong queuedCount = new AtomicLong();
+	private final AtomicLong droppedCount = new AtomicLong();
+	private final AtomicLong flushedRowCount = new AtomicLong();
+	private final AtomicLong failedFlushCount = new AtomicLong();
+
+	public ProxyStatisticsWriter(DataSource dataSource, String statisticsTableName,
+								 String identityProvidersMapTableName, String serviceProvidersMapTableName,
+								 StatisticsDimensionCache idpDimensions, StatisticsDimensionCache spDimensions,
+								 long flushIntervalMs, int batchSize, int capacity, OverflowPolicy overflowPolicy,
+								 String filterName)
+	{
+		this.dataSource = dataSource;
+		this.statisticsTableName = statisticsTableName;
+		this.identityProvidersMapTableName = identityProvidersMapTableName;
+		this.serviceProvidersMapTableName = serviceProvidersMapTableName;
+		this.idpDimensions = idpDimensions;
+		this.spDimensions = spDimensions;
+		this.batchSize = Math.max(1, batchSize);
+		this.capacity = Math.max(this.batchSize, capacity);
+		this.overflowPolicy = overflowPolicy;
+		this.filterName = filterName;
+
+		this.executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+				.setNameFormat("proxy-statistics-" + filterName)
+				.setDaemon(true)
+				.build());
+		long interval = Math.max(100, flushIntervalMs);
+		executor.scheduleWithFixedDelay(this::flushSafely, interval, interval, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Stop the background thread and write the pending rows. Logins added afterwards are written
+	 * by the request thread.
+	 */
+	public void stop() {
+		if (!stopped.compareAndSet(false, true)) {
+			return;
+		}
+
+		executor.shutdown();
+		try {
+			if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+				log.warn("{} - background flush of logins has not finished in time", filterName);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		flushSafely();
+		log.info("{} - writer of logins stopped, stats: {}", filterName, getStats());
+	}
+
+	/**
+	 * Queue the login.
+	 * @param day Day of the login.
+	 * @param idpEntityId Entity ID of the IdP.
+	 * @param idpName Name of the IdP.
+	 * @param spIdentifier Client ID of the SP.
+	 * @param spName Name of the SP.
+	 * @param userId Identifier of the user.
+	 */
+	public void addLogin(LocalDate day, String idpEntityId, String idpName, String spIdentifier, String spName,
+						 String userId)
+	{
+		LoginKey key = new LoginKey(day, idpEntityId, spIdentifier, userId);
+		if (pending.size() >= capacity && !pending.containsKey(key)) {
+			if (overflowPolicy == OverflowPolicy.DROP) {
+				droppedCount.incrementAndGet();
+				log.debug("{} - queue of logins is full, login dropped", filterName);
+				return;
+			}
+			flushSafely();
+			if (pending.size() >= capacity) {
+				// the flush has failed and its rows have been returned to the queue
+				droppedCount.incrementAndGet();
+				log.debug("{} - queue of logins is still full, login dropped", filterName);
+				return;
+			}
+		}
+
+		pendingIdpNames.put(idpEntityId, Optional.ofNullable(idpName));
+		pendingSpNames.put(spIdentifier, Optional.ofNullable(spName));
+		pending.merge(key, 1L, Long::sum);
+		queuedCount.incrementAndGet();
+
+		if (stopped.get()) {
+			flushSafely();
+		} else if (pending.size() >= batchSize && flushScheduled.compareAndSet(false, true)) {
+			executor.execute(this::flushSafely);
+		}
+	}
+
+	/**
+	 * Get statistics of the writer.
+	 * @return Map of statistics.
+	 */
+	public Map<String, Long> getStats() {
+		Map<String, Long> stats = new LinkedHashMap<>();
+		stats.put("pendingRows", (long) pending.size());
+		stats.put("queuedCount", queuedCount.get());
+		stats.put("droppedCount", droppedCount.get());
+		stats.put("flushedRowCount", flushedRowCount.get());
+		stats.put("failedFlushCount", failedFlushCount.get());
+		return stats;
+	}
+
+	private void flushSafely() {
+		flushScheduled.set(false);
+		try {
+			flush();
+		} catch (RuntimeException e) {
+			log.warn("{} - flush of logins failed", filterName, e);
+		}
+	}
+
+	private synchronized void flush() {
+		if (pending.isEmpty()) {
+			return;
+		}
+
+		Map<LoginKey, Long> rows = new HashMap<>();
+		for (LoginKey key : new ArrayList<>(pending.keySet())) {
+			Long count = pending.remove(key);
+			if (count != null) {
+				rows.put(key, count);
+			}
+		}
+		Map<String, Optional<String>> idpNames = drain(pendingIdpNames);
+		Map<String, Optional<String>> spNames = drain(pendingSpNames);
+
+		try (Connection c = dataSource.getConnection()) {
+			Map<String, Integer> idpIds = resolveIds(c, identityProvidersMapTableName, "idpId", idpDimensions,
+					idpNames, rows.keySet().stream().map(k -> k.idpEntityId).collect(Collectors.toSet()));
+			Map<String, Integer> spIds = resolveIds(c, serviceProvidersMapTableName, "spId", spDimensions,
+					spNames, rows.keySet().stream().map(k -> k.spIdentifier).collect(Collectors.toSet()));
+			upsertLogins(c, rows, idpIds, spIds);
+			flushedRowCount.addAndGet(rows.size());
+			log.debug("{} - flushed {} login rows, stats: {}", filterName, rows.size(), getStats());
+		} catch (SQLException ex) {
+			failedFlushCount.incrementAndGet();
+			log.warn("{} - caught SQLException while flushing {} login rows", filterName, rows.size());
+			log.debug("{} - details:", filterName, ex);
+			requeue(rows, idpNames, spNames);
+		}
+	}
+
+	/**
+	 * Get ids of the entities from the map table. Only new entities and entities with changed name are upserted
+	 * and only ids not known by the dimension cache are selected.
+	 */
+	private Map<String, Integer> resolveIds(Connection c, String tableName, String idColumn,
+											StatisticsDimensionCache dimensions, Map<String, Optional<String>> names,
+											Set<String> identifiers) throws SQLException
+	{
+		Map<String, Optional<String>> changed = new HashMap<>();
+		names.forEach((identifier, name) -> {
+			if (dimensions.getId(identifier, name.orElse(null)) == null) {
+				changed.put(identifier, name);
+			}
+		});
+		upsertNames(c, tableName, changed);
+
+		Map<String, Integer> ids = new HashMap<>();
+		List<String> unknown = new ArrayList<>();
+		for (String identifier : identifiers) {
+			Integer id = changed.containsKey(identifier) ? null : dimensions.getId(identifier);
+			if (id != null) {
+				ids.put(identifier, id);
+			} else {
+				unknown.add(identifier);
+			}
+		}
+
+		for (Map.Entry<String, Integer> entry : selectIds(c, tableName, idColumn, unknown).entrySet()) {
+			ids.put(entry.getKey(), entry.getValue());
+			Optional<String> name = names.get(entry.getKey());
+			if (name != null) {
+				dimensions.put(entry.getKey(), entry.getValue(), name.orElse(null));
+			}
+		}
+		return ids;
+	}
+
+	private void upsertNames(Connection c, String tableName, Map<String, Optional<String>> names)
+			throws SQLException
+	{
+		List<Map.Entry<String, Optional<String>>> entries = new ArrayList<>(names.entrySet());
+		for (int from = 0; from < entries.size(); from += batchSize) {
+			List<Map.Entry<String, Optional<String>>> batch = entries.subList(from,
+					Math.min(from + batchSize, entries.size()));
+			String query = "INSERT INTO " + tableName + "(identifier, name) VALUES " + placeholders(batch.size(), 2)
+					+ " ON DUPLICATE KEY UPDATE name = VALUES(name)";
+			try (PreparedStatement preparedStatement = c.prepareStatement(query)) {
+				int i = 1;
+				for (Map.Entry<String, Optional<String>> entry : batch) {
+					preparedStatement.setString(i++, entry.getKey());
+					preparedStatement.setString(i++, entry.getValue().orElse(null));
+				}
+				preparedStatement.execute();
+			}
+		}
+	}
+
+	private Map<String, Integer> selectIds(Connection c, String tableName, String idColumn,
+										   List<String> identifiers) throws SQLException
+	{
+		Map<String, Integer> ids = new HashMap<>();
+		for (int from = 0; from < identifiers.size(); from += batchSize) {
+			List<String> batch = identifiers.subList(from, Math.min(from + batchSize, identifiers.size()));
+			String query = "SELECT identifier, " + idColumn + " FROM " + tableName + " WHERE identifier IN "
+					+ placeholders(1, batch.size());
+			try (PreparedStatement preparedStatement = c.prepareStatement(query)) {
+				int i = 1;
+				for (String identifier : batch) {
+					preparedStatement.setString(i++, identifier);
+				}
+				try (ResultSet rs = preparedStatement.executeQuery()) {
+					while (rs.next()) {
+						ids.put(rs.getString("identifier"), rs.getInt(idColumn));
+					}
+				}
+			}
+		}
+		return ids;
+	}
+
+	private void upsertLogins(Connection c, Map<LoginKey, Long> rows, Map<String, Integer> idpIds,
+							  Map<String, Integer> spIds) throws SQLException
+	{
+		List<Map.Entry<LoginKey, Long>> entries = new ArrayList<>();
+		for (Map.Entry<LoginKey, Long> entry : rows.entrySet()) {
+			LoginKey key = entry.getKey();
+			if (idpIds.containsKey(key.idpEntityId) && spIds.containsKey(key.spIdentifier)) {
+				entries.add(entry);
+			} else {
+				log.warn("{} - IdP {} or SP {} not found in the map tables, login dropped", filterName,
+						key.idpEntityId, key.spIdentifier);
+				droppedCount.incrementAndGet();
+			}
+		}
+
+		// counts are incremented, so the batches are written in one transaction - rows of the failed flush
+		// are requeued and must not have been written partially
+		boolean autoCommit = c.getAutoCommit();
+		c.setAutoCommit(false);
+		try {
+			for (int from = 0; from < entries.size(); from += batchSize) {
+				List<Map.Entry<LoginKey, Long>> batch = entries.subList(from,
+						Math.min(from + batchSize, entries.size()));
+				String query = "INSERT INTO " + statisticsTableName + "(day, idpId, spId, user, logins) VALUES "
+						+ placeholders(batch.size(), 5) + " ON DUPLICATE KEY UPDATE logins = logins + VALUES(logins)";
+				try (PreparedStatement preparedStatement = c.prepareStatement(query)) {
+					int i = 1;
+					for (Map.Entry<LoginKey, Long> entry : batch) {
+						LoginKey key = entry.getKey();
+						preparedStatement.setDate(i++, Date.valueOf(key.day));
+						preparedStatement.setInt(i++, idpIds.get(key.idpEntityId));
+						preparedStatement.setInt(i++, spIds.get(key.spIdentifier));
+						preparedStatement.setString(i++, key.userId);
+						preparedStatement.setLong(i++, entry.getValue());
+					}
+					preparedStatement.execute();
+				}
+			}
+			c.commit();
+		} catch (SQLException ex) {
+			try {
+				c.rollback();
+			} catch (SQLException rollbackEx) {
+				ex.addSuppressed(rollbackEx);
+			}
+			throw ex;
+		} finally {
+			c.setAutoCommit(autoCommit);
+		}
+	}
+
+	private void requeue(Map<LoginKey, Long> rows, Map<String, Optional<String>> idpNames,
+						 Map<String, Optional<String>> spNames)
+	{
+		idpNames.forEach(pendingIdpNames::putIfAbsent);
+		spNames.forEach(pendingSpNames::putIfAbsent);
+		for (Map.Entry<LoginKey, Long> entry : rows.entrySet()) {
+			if (pending.size() < capacity || pending.containsKey(entry.getKey())) {
+				pending.merge(entry.getKey(), entry.getValue(), Long::sum);
+			} else {
+				droppedCount.incrementAndGet();
+			}
+		}
+	}
+
+	private Map<String, Optional<String>> drain(Map<String, Optional<String>> source) {
+		Map<String, Optional<String>> drained = new HashMap<>();
+		for (String key : new ArrayList<>(source.keySet())) {
+			Optional<String> value = source.remove(key);
+			if (value != null) {
+				drained.put(key, value);
+			}
+		}
+		return drained;
+	}
+
+	private String placeholders(int rows, int columns) {
+		StringBuilder row = new StringBuilder("(");
+		for (int i = 0; i < columns; i++) {
+			row.append(i == 0 ? "?" : ", ?");
+		}
+		row.append(')');
+
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < rows; i++) {
+			sb.append(i == 0 ? "" : ", ").append(row);
+		}
+		return sb.toString();
+	}
+
+	private static class LoginKey {
+
+		private final LocalDate day;
+		private final String idpEntityId;
+		private final String spIdentifier;
+		private final String userId;
+
+		LoginKey(LocalDate day, String idpEntityId, String spIdentifier, String userId) {
+			this.day = day;
+			this.idpEntityId = idpEntityId;
+			this.spIdentifier = spIdentifier;
+			this.userId = userId;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) {
+				return true;
+			} else if (o == null || getClass() != o.getClass()) {
+				return false;
+			}
+			LoginKey loginKey = (LoginKey) o;
+			return day.equals(loginKey.day) && Objects.equals(idpEntityId, loginKey.idpEntityId)
+					&& Objects.equals(spIdentifier, loginKey.spIdentifier) && userId.equals(loginKey.userId);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(day, idpEntityId, spIdentifier, userId);
+		}
+
+	}
+
+}
@@ -0,0 +1,77 @@
+package cz.muni.ics.oidc.server.filters.impl;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cache of rows of the IdP or SP map table used by {@link ProxyStatisticsFilter}: identifier -> (id, last known
+ * name). The map row has to be upserted only when the entity is new or its name has changed. Entries expire
+ * after an hour, so rows changed directly in the database are picked up eventually.
+ *
+ * @author Pavol Pluta <pavol.pluta1@gmail.com>
+ */
+public class StatisticsDimensionCache {
+
+	private static final long MAX_SIZE = 10000;
+	private static final long TTL_SECS = 3600;
+
+	private final Cache<String, Dimension> dimensions = CacheBuilder.newBuilder()
+			.maximumSize(MAX_SIZE)
+			.expireAfterWrite(TTL_SECS, TimeUnit.SECONDS)
+			.build();
+
+	/**
+	 * Get id of the entity if it is known with the given name.
+	 * @param identifier Identifier of the entity (entity ID of IdP, client ID of SP).
+	 * @param name Current name of the entity.
+	 * @return Id from the map table, NULL if the entity is unknown or its name has changed.
+	 */
+	public Integer getId(String identifier, String name) {
+		if (identifier == null) {
+			return null;
+		}
+		Dimension dimension = dimensions.getIfPresent(identifier);
+		return dimension != null && Objects.equals(dimension.name, name) ? dimension.id : null;
+	}
+
+	/**
+	 * Get id of the entity regardless of its name.
+	 * @param identifier Identifier of the entity (entity ID of IdP, client ID of SP).
+	 * @return Id from the map table, NULL if the entity is unknown.
+	 */
+	public Integer getId(String identifier) {
+		if (identifier == null) {
+			return null;
+		}
+		Dimension dimension = dimensions.getIfPresent(identifier);
+		return dimension != null ? dimension.id : null;
+	}
+
+	/**
+	 * Remember the entity stored in the map table.
+	 * @param identifier Identifier of the entity.
+	 * @param id Id from the map table.
+	 * @param name Name stored in the map table.
+	 */
+	public void put(String identifier, int id, String name) {
+		if (identifier != null) {
+			dimensions.put(identifier, new Dimension(id, name));
+		}
+	}
+
+	private static class Dimension {
+
+		private final int id;
+		private final String name;
+
+		Dimension(int id, String name) {
+			this.id = id;
+			this.name = name;
+		}
+
+	}
+
+}
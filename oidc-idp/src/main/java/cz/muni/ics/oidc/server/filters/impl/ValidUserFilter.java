@@ -8,6 +8,7 @@ import cz.muni.ics.oidc.server.adapters.PerunAdapter;
 import cz.muni.ics.oidc.server.configurations.FacilityAttrsConfig;
 import cz.muni.ics.oidc.server.filters.FilterParams;
 import cz.muni.ics.oidc.server.filters.FiltersUtils;
+import cz.muni.ics.oidc.server.filters.MembershipDecisionCache;
 import cz.muni.ics.oidc.server.filters.PerunRequestFilter;
 import cz.muni.ics.oidc.server.filters.PerunRequestFilterParams;
 import org.slf4j.Logger;
@@ -67,13 +68,16 @@ public class ValidUserFilter extends PerunRequestFilter {
 
 	private final PerunAdapter perunAdapter;
 	private final FacilityAttrsConfig facilityAttrsConfig;
+	private final MembershipDecisionCache membershipDecisionCache;
 	private final String filterName;
+	private final Set<String> requiredFacilityAttributes;
 
 	public ValidUserFilter(PerunRequestFilterParams params) {
 		super(params);
 		BeanUtil beanUtil = params.getBeanUtil();
 		this.perunAdapter = beanUtil.getBean(PerunAdapter.class);
 		this.facilityAttrsConfig = beanUtil.getBean(FacilityAttrsConfig.class);
+		this.membershipDecisionCache = beanUtil.getBean(MembershipDecisionCache.class);
 
 		this.allEnvGroups = this.getIdsFromParam(params, ALL_ENV_GROUPS);
 		this.allEnvVos = this.getIdsFromParam(params, ALL_ENV_VOS);
@@ -82,6 +86,14 @@ public class ValidUserFilter extends PerunRequestFilter {
 		this.prodEnvGroups = this.getIdsFromParam(params, PROD_ENV_GROUPS);
 		this.prodEnvVos = this.getIdsFromParam(params, PROD_ENV_VOS);
 		this.filterName = params.getFilterName();
+
+		this.requiredFacilityAttributes = new HashSet<>(facilityAttrsConfig.getMembershipAttrNames());
+		this.requiredFacilityAttributes.add(facilityAttrsConfig.getTestSpAttr());
+	}
+
+	@Override
+	public Set<String> getRequiredFacilityAttributes() {
+		return requiredFacilityAttributes;
 	}
 
 	@Override
@@ -105,7 +117,8 @@ public class ValidUserFilter extends PerunRequestFilter {
 			return true;
 		}
 
-		PerunAttributeValue isTestSp = perunAdapter.getFacilityAttributeValue(facility.getId(), facilityAttrsConfig.getTestSpAttr());
+		PerunAttributeValue isTestSp = FiltersUtils.getFacilityAttributeValue(params, perunAdapter,
+				facilityAttrsConfig.getTestSpAttr());
 		boolean isTestSpBool = false;
 		if (isTestSp != null) {
 			isTestSpBool = isTestSp.valueAsBoolean();
@@ -119,14 +132,16 @@ public class ValidUserFilter extends PerunRequestFilter {
 			additionalGroups.addAll(prodEnvGroups);
 		}
 
-		if (!perunAdapter.isValidMemberInGroupsAndVos(
-				user.getId(), allEnvVos, allEnvGroups, additionalVos, additionalGroups))
-		{
+		String rules = filterName + (isTestSpBool ? "-test" : "-prod");
+		boolean isValidMember = membershipDecisionCache.decide(user.getId(), facility.getId(), rules,
+				() -> perunAdapter.isValidMemberInGroupsAndVos(
+						user.getId(), allEnvVos, allEnvGroups, additionalVos, additionalGroups));
+		if (!isValidMember) {
 			log.info("{} - user is not member in required set of vos and groups", filterName);
 			log.debug("{} - user: '{}', allEnvVos: '{}', allEnvGroups: '{}', additionalVos: '{}', additionalGroups: '{}'",
 					filterName, user.getId(), allEnvVos, allEnvGroups, additionalVos, additionalGroups);
-			Map<String, PerunAttributeValue> facilityAttributes = perunAdapter.getFacilityAttributeValues(
-					facility, facilityAttrsConfig.getMembershipAttrNames());
+			Map<String, PerunAttributeValue> facilityAttributes = FiltersUtils.getFacilityAttributeValues(
+					params, perunAdapter, facilityAttrsConfig.getMembershipAttrNames());
 
 			FiltersUtils.redirectUserCannotAccess(request, response, facility, user, params.getClientIdentifier(),
 					facilityAttrsConfig, facilityAttributes, perunAdapter);
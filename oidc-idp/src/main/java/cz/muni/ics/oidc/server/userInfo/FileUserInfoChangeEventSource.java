@@ -0,0 +1,158 @@
+package cz.muni.ics.oidc.server.userInfo;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.StringUtils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Source of events dropped as files into a directory on the local filesystem. Only files with the suffix '.events'
+ * are read (so the files should be written under different name and renamed afterwards). The directory can be
+ * shared by the nodes of the cluster, so the files are not deleted when read - each node remembers the files it
+ * has already processed and deletes only such files older than the retention period (the retention has to be
+ * longer than the delay of the slowest node, files deleted by other nodes before being read are missed).
+ * Each line of the file contains the type of the changed entity (USER, GROUP or FACILITY) and its ID separated
+ * by whitespace. Empty lines and lines starting with '#' are ignored.
+ *
+ * Example of the file content:
+ * <ul>
+ *     <li>USER 12345</li>
+ *     <li>FACILITY 678</li>
+ * </ul>
+ *
+ * @author Pavol Pluta <pavol.pluta1@gmail.com>
+ */
+public class FileUserInfoChangeEventSource implements UserInfoChangeEventSource {
+
+	private static final Logger log = LoggerFactory.getLogger(FileUserInfoChangeEventSource.class);
+
+	private static final String SUFFIX = "*.events";
+
+	private final Path directory;
+	private final boolean enabled;
+	private final long retentionMillis;
+
+	// processed file -> its last modification time, so the rewritten file is processed again
+	private final Map<Path, Long> processed = new HashMap<>();
+	private boolean initialized = false;
+
+	public FileUserInfoChangeEventSource(String directory, boolean enabled, long retentionSecs) {
+		this.enabled = enabled && StringUtils.hasText(directory);
+		this.retentionMillis = TimeUnit.SECONDS.toMillis(retentionSecs);
+		this.directory = StringUtils.hasText(directory) ? Paths.get(directory) : null;
+		if (enabled && this.directory == null) {
+			log.warn("no directory configured for the file events source, events will not be read");
+		}
+	}
+
+	@Override
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	@Override
+	public synchronized List<UserInfoChangeEvent> poll() {
+		List<UserInfoChangeEvent> events = new ArrayList<>();
+		if (!enabled || !Files.isDirectory(directory)) {
+			return events;
+		}
+
+		List<Path> files = new ArrayList<>();
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, SUFFIX)) {
+			stream.forEach(files::add);
+		} catch (IOException e) {
+			log.warn("cannot list directory {} with events", directory);
+			log.debug("details:", e);
+			return events;
+		}
+		files.sort(Comparator.comparingLong(this::lastModified));
+		processed.keySet().retainAll(files);
+
+		if (!initialized) {
+			// caches are empty after start, older events are not relevant
+			files.forEach(file -> processed.put(file, lastModified(file)));
+			initialized = true;
+			log.debug("skipping {} existing files with events", files.size());
+			return events;
+		}
+
+		int count = 0;
+		long limit = System.currentTimeMillis() - retentionMillis;
+		for (Path file : files) {
+			long modified = lastModified(file);
+			if (Long.valueOf(modified).equals(processed.get(file))) {
+				// only files already read by this node are deleted, so no events are lost after a delay
+				if (modified < limit) {
+					delete(file);
+				}
+				continue;
+			}
+			try {
+				for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+					UserInfoChangeEvent event = parseLine(line);
+					if (event != null) {
+						events.add(event);
+					}
+				}
+				processed.put(file, modified);
+				count++;
+			} catch (IOException e) {
+				log.warn("cannot process file {} with events", file);
+				log.debug("details:", e);
+			}
+		}
+
+		log.trace("read {} events from {} files", events.size(), count);
+		return events;
+	}
+
+	private void delete(Path file) {
+		try {
+			// other nodes may delete the same file
+			Files.deleteIfExists(file);
+			processed.remove(file);
+		} catch (IOException e) {
+			log.warn("cannot delete old file {} with events", file);
+			log.debug("details:", e);
+		}
+	}
+
+	private UserInfoChangeEvent parseLine(String line) {
+		String trimmed = line.trim();
+		if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+			return null;
+		}
+
+		String[] parts = trimmed.split("\\s+");
+		try {
+			if (parts.length == 2) {
+				return UserInfoChangeEvent.of(parts[0], Long.parseLong(parts[1]));
+			}
+		} catch (IllegalArgumentException e) {
+			// handled below
+		}
+		log.warn("skipping invalid event '{}'", trimmed);
+		return null;
+	}
+
+	private long lastModified(Path file) {
+		try {
+			return Files.getLastModifiedTime(file).toMillis();
+		} catch (IOException e) {
+			return 0;
+		}
+	}
+
+}
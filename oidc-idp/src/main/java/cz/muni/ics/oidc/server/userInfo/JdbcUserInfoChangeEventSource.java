@@ -0,0 +1,145 @@
+package cz.muni.ics.oidc.server.userInfo;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Source of events stored in the outbox table 'perun_userinfo_events' of the main DB. Each row contains the type
+ * of the changed entity (USER, GROUP or FACILITY) and its ID. Rows are not removed when read, as each node
+ * of the cluster reads them independently (remembering ID of the last read event). Old rows are removed
+ * by the scheduled task after the retention period.
+ *
+ * IDs are allocated before the inserting transaction commits, so an event with lower ID can become visible after
+ * events with higher IDs. Missing IDs below the last read one are therefore remembered as gaps and read again
+ * until they appear or until GAP_TIMEOUT_SECS passes (IDs skipped by the DB, e.g. after rollback, never appear).
+ *
+ * Example of an event: INSERT INTO perun_userinfo_events(entity, entity_id) VALUES ('USER', 12345);
+ *
+ * @author Pavol Pluta <pavol.pluta1@gmail.com>
+ */
+public class JdbcUserInfoChangeEventSource implements UserInfoChangeEventSource {
+
+	private static final Logger log = LoggerFactory.getLogger(JdbcUserInfoChangeEventSource.class);
+
+	private static final String SELECT_LAST_ID = "SELECT MAX(id) FROM perun_userinfo_events";
+	private static final String SELECT_EVENTS = "SELECT id, entity, entity_id FROM perun_userinfo_events " +
+			"WHERE id > ? ORDER BY id";
+	private static final String SELECT_GAPS = "SELECT id, entity, entity_id FROM perun_userinfo_events " +
+			"WHERE id IN (%s) ORDER BY id";
+	private static final String DELETE_OLD = "DELETE FROM perun_userinfo_events WHERE created < ?";
+
+	private static final int MAX_EVENTS = 1000;
+	private static final int MAX_GAPS = 1000;
+	private static final long GAP_TIMEOUT_SECS = 300;
+
+	private final JdbcTemplate jdbcTemplate;
+	private final boolean enabled;
+	private final long retentionMillis;
+
+	// missing ID -> time when the gap was found
+	private final TreeMap<Long, Long> gaps = new TreeMap<>();
+
+	private Long lastId;
+
+	public JdbcUserInfoChangeEventSource(DataSource dataSource, boolean enabled, long retentionSecs) {
+		this.jdbcTemplate = new JdbcTemplate(dataSource);
+		this.jdbcTemplate.setMaxRows(MAX_EVENTS);
+		this.enabled = enabled;
+		this.retentionMillis = TimeUnit.SECONDS.toMillis(retentionSecs);
+	}
+
+	@Override
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	@Override
+	public synchronized List<UserInfoChangeEvent> poll() {
+		List<UserInfoChangeEvent> events = new ArrayList<>();
+		if (!enabled) {
+			return events;
+		}
+
+		if (lastId == null) {
+			// caches are empty after start, older events are not relevant
+			Long maxId = jdbcTemplate.queryForObject(SELECT_LAST_ID, Long.class);
+			lastId = maxId == null ? 0L : maxId;
+			log.debug("reading events with ID greater than {}", lastId);
+			return events;
+		}
+
+		long now = System.currentTimeMillis();
+		expireGaps(now);
+		if (!gaps.isEmpty()) {
+			String placeholders = String.join(",", Collections.nCopies(gaps.size(), "?"));
+			jdbcTemplate.query(String.format(SELECT_GAPS, placeholders), rs -> {
+				long id = rs.getLong("id");
+				gaps.remove(id);
+				addEvent(events, id, rs.getString("entity"), rs.getLong("entity_id"));
+			}, gaps.keySet().toArray());
+		}
+
+		jdbcTemplate.query(SELECT_EVENTS, rs -> {
+			long id = rs.getLong("id");
+			for (long missing = Math.max(lastId + 1, id - MAX_GAPS); missing < id; missing++) {
+				gaps.put(missing, now);
+			}
+			addEvent(events, id, rs.getString("entity"), rs.getLong("entity_id"));
+			lastId = id;
+		}, lastId);
+		trimGaps();
+
+		log.trace("read {} events, last ID is {}, waiting for {} gaps", events.size(), lastId, gaps.size());
+		return events;
+	}
+
+	/**
+	 * Remove events older than the retention period.
+	 * @return Number of removed events.
+	 */
+	public int clearOld() {
+		if (!enabled) {
+			return 0;
+		}
+
+		return jdbcTemplate.update(DELETE_OLD, new Timestamp(System.currentTimeMillis() - retentionMillis));
+	}
+
+	private void addEvent(List<UserInfoChangeEvent> events, long id, String entity, long entityId) {
+		try {
+			events.add(UserInfoChangeEvent.of(entity, entityId));
+		} catch (IllegalArgumentException e) {
+			log.warn("skipping event {} with unknown entity '{}'", id, entity);
+		}
+	}
+
+	private void expireGaps(long now) {
+		long limit = now - TimeUnit.SECONDS.toMillis(GAP_TIMEOUT_SECS);
+		gaps.values().removeIf(found -> found < limit);
+	}
+
+	private void trimGaps() {
+		// keep the newest gaps, the oldest ones are the least likely to be filled
+		Iterator<Map.Entry<Long, Long>> it = gaps.entrySet().iterator();
+		int excess = gaps.size() - MAX_GAPS;
+		if (excess > 0) {
+			log.warn("too many gaps in IDs of events, forgetting {} oldest ones", excess);
+		}
+		while (excess-- > 0 && it.hasNext()) {
+			it.next();
+			it.remove();
+		}
+	}
+
+}
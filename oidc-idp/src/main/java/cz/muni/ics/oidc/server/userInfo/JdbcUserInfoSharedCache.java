@@ -0,0 +1,312 @@
+package cz.muni.ics.oidc.server.userInfo;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.mitre.openid.connect.model.Address;
+import org.mitre.openid.connect.model.DefaultAddress;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Shared tier of the UserInfo cache stored in the database table 'perun_userinfo_cache'.
+ * UserInfo objects are stored as JSON together with the timestamp of their expiration.
+ *
+ * @author Pavol Pluta <pavol.pluta1@gmail.com>
+ */
+public class JdbcUserInfoSharedCache implements UserInfoSharedCache {
+
+	private static final Logger log = LoggerFactory.getLogger(JdbcUserInfoSharedCache.class);
+
+	private static final String NO_CLIENT = "";
+
+	private static final String SELECT = "SELECT userinfo FROM perun_userinfo_cache " +
+			"WHERE user_id = ? AND client_id = ? AND expiration > ?";
+	private static final String UPDATE = "UPDATE perun_userinfo_cache SET userinfo = ?, expiration = ? " +
+			"WHERE user_id = ? AND client_id = ?";
+	private static final String INSERT = "INSERT INTO perun_userinfo_cache(user_id, client_id, userinfo, expiration) " +
+			"VALUES (?, ?, ?, ?)";
+	private static final String DELETE = "DELETE FROM perun_userinfo_cache WHERE user_id = ? AND client_id = ?";
+	private static final String DELETE_USER = "DELETE FROM perun_userinfo_cache WHERE user_id = ?";
+	private static final String DELETE_CLIENT = "DELETE FROM perun_userinfo_cache WHERE client_id = ?";
+	private static final String DELETE_ALL = "DELETE FROM perun_userinfo_cache";
+	private static final String DELETE_EXPIRED = "DELETE FROM perun_userinfo_cache WHERE expiration <= ?";
+
+	private static final String SUB = "sub";
+	private static final String PREFERRED_USERNAME = "preferred_username";
+	private static final String GIVEN_NAME = "given_name";
+	private static final String FAMILY_NAME = "family_name";
+	private static final String MIDDLE_NAME = "middle_name";
+	private static final String NAME = "name";
+	private static final String EMAIL = "email";
+	private static final String ZONEINFO = "zoneinfo";
+	private static final String LOCALE = "locale";
+	private static final String PHONE_NUMBER = "phone_number";
+	private static final String ADDRESS_FORMATTED = "address_formatted";
+	private static final String CUSTOM_CLAIMS = "custom_claims";
+	private static final String RESOLVED_CUSTOM_CLAIMS = "resolved_custom_claims";
+
+	private final JdbcTemplate jdbcTemplate;
+	private final boolean enabled;
+	private final long ttlMillis;
+	private final ObjectMapper mapper = new ObjectMapper();
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong puts = new AtomicLong();
+	private final AtomicLong errors = new AtomicLong();
+
+	public JdbcUserInfoSharedCache(DataSource dataSource, boolean enabled, long ttlSecs) {
+		this.jdbcTemplate = new JdbcTemplate(dataSource);
+		this.enabled = enabled;
+		this.ttlMillis = TimeUnit.SECONDS.toMillis(ttlSecs);
+	}
+
+	@Override
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	@Override
+	public PerunUserInfo get(long userId, String clientId) {
+		if (!enabled) {
+			return null;
+		}
+
+		try {
+			List<String> result = jdbcTemplate.queryForList(SELECT, String.class, userId, clientKey(clientId), now());
+			if (result.isEmpty()) {
+				misses.incrementAndGet();
+				log.debug("shared cache miss for user {} and client {}", userId, clientId);
+				return null;
+			}
+			PerunUserInfo userInfo = fromJson(userId, result.get(0));
+			hits.incrementAndGet();
+			log.debug("shared cache hit for user {} and client {}", userId, clientId);
+			return userInfo;
+		} catch (DataAccessException | IOException e) {
+			errors.incrementAndGet();
+			log.warn("cannot read UserInfo for user {} and client {} from shared cache", userId, clientId);
+			log.debug("details:", e);
+			return null;
+		}
+	}
+
+	@Override
+	public void put(long userId, String clientId, PerunUserInfo userInfo) {
+		if (!enabled || userInfo == null) {
+			return;
+		}
+
+		try {
+			String json = toJson(userInfo);
+			long expiration = now() + ttlMillis;
+			int updated = jdbcTemplate.update(UPDATE, json, expiration, userId, clientKey(clientId));
+			if (updated == 0) {
+				try {
+					jdbcTemplate.update(INSERT, userId, clientKey(clientId), json, expiration);
+				} catch (DuplicateKeyException e) {
+					log.debug("UserInfo for user {} and client {} has been stored by other node", userId, clientId);
+				}
+			}
+			puts.incrementAndGet();
+		} catch (DataAccessException | IOException e) {
+			errors.incrementAndGet();
+			log.warn("cannot store UserInfo for user {} and client {} into shared cache", userId, clientId);
+			log.debug("details:", e);
+		}
+	}
+
+	@Override
+	public void invalidate(long userId, String clientId) {
+		if (!enabled) {
+			return;
+		}
+
+		try {
+			jdbcTemplate.update(DELETE, userId, clientKey(clientId));
+		} catch (DataAccessException e) {
+			errors.incrementAndGet();
+			log.warn("cannot invalidate UserInfo for user {} and client {} in shared cache", userId, clientId);
+			log.debug("details:", e);
+		}
+	}
+
+	@Override
+	public void invalidateUser(long userId) {
+		if (!enabled) {
+			return;
+		}
+
+		try {
+			jdbcTemplate.update(DELETE_USER, userId);
+		} catch (DataAccessException e) {
+			errors.incrementAndGet();
+			log.warn("cannot invalidate UserInfo objects of user {} in shared cache", userId);
+			log.debug("details:", e);
+		}
+	}
+
+	@Override
+	public void invalidateUsers(Collection<Long> userIds) {
+		if (!enabled || userIds.isEmpty()) {
+			return;
+		}
+
+		try {
+			jdbcTemplate.batchUpdate(DELETE_USER, userIds.stream()
+					.map(userId -> new Object[] { userId })
+					.collect(Collectors.toList()));
+		} catch (DataAccessException e) {
+			errors.incrementAndGet();
+			log.warn("cannot invalidate UserInfo objects of {} users in shared cache", userIds.size());
+			log.debug("details:", e);
+		}
+	}
+
+	@Override
+	public void invalidateClient(String clientId) {
+		if (!enabled) {
+			return;
+		}
+
+		try {
+			jdbcTemplate.update(DELETE_CLIENT, clientKey(clientId));
+		} catch (DataAccessException e) {
+			errors.incrementAndGet();
+			log.warn("cannot invalidate UserInfo objects of client {} in shared cache", clientId);
+			log.debug("details:", e);
+		}
+	}
+
+	@Override
+	public void invalidateAll() {
+		if (!enabled) {
+			return;
+		}
+
+		try {
+			jdbcTemplate.update(DELETE_ALL);
+		} catch (DataAccessException e) {
+			errors.incrementAndGet();
+			log.warn("cannot invalidate UserInfo objects in shared cache");
+			log.debug("details:", e);
+		}
+	}
+
+	@Override
+	public int clearExpired() {
+		if (!enabled) {
+			return 0;
+		}
+
+		return jdbcTemplate.update(DELETE_EXPIRED, now());
+	}
+
+	@Override
+	public Map<String, Long> getStats() {
+		Map<String, Long> stats = new LinkedHashMap<>();
+		stats.put("hitCount", hits.get());
+		stats.put("missCount", misses.get());
+		stats.put("putCount", puts.get());
+		stats.put("errorCount", errors.get());
+		return stats;
+	}
+
+	private String clientKey(String clientId) {
+		return clientId == null ? NO_CLIENT : clientId;
+	}
+
+	private long now() {
+		return System.currentTimeMillis();
+	}
+
+	private String toJson(PerunUserInfo userInfo) throws IOException {
+		ObjectNode node = mapper.createObjectNode();
+		node.put(SUB, userInfo.getSub());
+		node.put(PREFERRED_USERNAME, userInfo.getPreferredUsername());
+		node.put(GIVEN_NAME, userInfo.getGivenName());
+		node.put(FAMILY_NAME, userInfo.getFamilyName());
+		node.put(MIDDLE_NAME, userInfo.getMiddleName());
+		node.put(NAME, userInfo.getName());
+		node.put(EMAIL, userInfo.getEmail());
+		node.put(ZONEINFO, userInfo.getZoneinfo());
+		node.put(LOCALE, userInfo.getLocale());
+		node.put(PHONE_NUMBER, userInfo.getPhoneNumber());
+		if (userInfo.getAddress() != null) {
+			node.put(ADDRESS_FORMATTED, userInfo.getAddress().getFormatted());
+		}
+		ObjectNode customClaims = node.putObject(CUSTOM_CLAIMS);
+		for (Map.Entry<String, JsonNode> claim : userInfo.getCustomClaims().entrySet()) {
+			customClaims.set(claim.getKey(), claim.getValue());
+		}
+		ArrayNode resolvedCustomClaims = node.putArray(RESOLVED_CUSTOM_CLAIMS);
+		for (String claim : userInfo.getResolvedCustomClaims()) {
+			resolvedCustomClaims.add(claim);
+		}
+
+		return mapper.writeValueAsString(node);
+	}
+
+	private PerunUserInfo fromJson(long userId, String json) throws IOException {
+		JsonNode node = mapper.readTree(json);
+		PerunUserInfo userInfo = new PerunUserInfo();
+		userInfo.setId(userId);
+		userInfo.setSub(textValue(node, SUB));
+		userInfo.setPreferredUsername(textValue(node, PREFERRED_USERNAME));
+		userInfo.setGivenName(textValue(node, GIVEN_NAME));
+		userInfo.setFamilyName(textValue(node, FAMILY_NAME));
+		userInfo.setMiddleName(textValue(node, MIDDLE_NAME));
+		userInfo.setName(textValue(node, NAME));
+		userInfo.setEmail(textValue(node, EMAIL));
+		userInfo.setZoneinfo(textValue(node, ZONEINFO));
+		userInfo.setLocale(textValue(node, LOCALE));
+		userInfo.setPhoneNumber(textValue(node, PHONE_NUMBER));
+		String formattedAddress = textValue(node, ADDRESS_FORMATTED);
+		if (formattedAddress != null) {
+			Address address = new DefaultAddress();
+			address.setFormatted(formattedAddress);
+			userInfo.setAddress(address);
+		}
+		JsonNode customClaims = node.get(CUSTOM_CLAIMS);
+		if (customClaims != null && customClaims.isObject()) {
+			Iterator<Map.Entry<String, JsonNode>> it = customClaims.fields();
+			while (it.hasNext()) {
+				Map.Entry<String, JsonNode> claim = it.next();
+				userInfo.getCustomClaims().put(claim.getKey(), claim.getValue());
+			}
+		}
+		JsonNode resolvedCustomClaims = node.get(RESOLVED_CUSTOM_CLAIMS);
+		if (resolvedCustomClaims != null && resolvedCustomClaims.isArray()) {
+			for (JsonNode claim : resolvedCustomClaims) {
+				userInfo.getResolvedCustomClaims().add(claim.asText());
+			}
+		}
+
+		return userInfo;
+	}
+
+	private String textValue(JsonNode node, String field) {
+		JsonNode value = node.get(field);
+		if (value == null || value.isNull()) {
+			return null;
+		}
+		return value.asText();
+	}
+
+}
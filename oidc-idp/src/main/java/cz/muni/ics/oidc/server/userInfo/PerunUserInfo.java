@@ -10,8 +10,10 @@ import org.mitre.openid.connect.model.DefaultUserInfo;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * Implements UserInfo by inheriting from DefaultUserInfo and adding more claims.
@@ -23,12 +25,53 @@ public class PerunUserInfo extends DefaultUserInfo {
 	private final static Logger log = LoggerFactory.getLogger(PerunUserInfo.class);
 
 	private final Map<String, JsonNode> customClaims = new LinkedHashMap<>();
+	private final Set<String> resolvedCustomClaims = new HashSet<>();
 	private JsonObject obj;
 
 	public Map<String, JsonNode> getCustomClaims() {
 		return customClaims;
 	}
 
+	/**
+	 * Names of custom claims which have been produced for this object (even if the produced value was empty).
+	 * @return Set of claim names.
+	 */
+	public Set<String> getResolvedCustomClaims() {
+		return resolvedCustomClaims;
+	}
+
+	/**
+	 * Create a copy of this object containing the standard claims set by PerunUserInfoService and custom claims.
+	 * @return Copy of the object.
+	 */
+	public PerunUserInfo copy() {
+		PerunUserInfo copy = copyStandardClaims();
+		copy.customClaims.putAll(customClaims);
+		copy.resolvedCustomClaims.addAll(resolvedCustomClaims);
+		return copy;
+	}
+
+	/**
+	 * Create a copy of this object containing only the standard claims set by PerunUserInfoService.
+	 * @return Copy of the object without custom claims.
+	 */
+	public PerunUserInfo copyStandardClaims() {
+		PerunUserInfo copy = new PerunUserInfo();
+		copy.setId(getId());
+		copy.setSub(getSub());
+		copy.setPreferredUsername(getPreferredUsername());
+		copy.setGivenName(getGivenName());
+		copy.setFamilyName(getFamilyName());
+		copy.setMiddleName(getMiddleName());
+		copy.setName(getName());
+		copy.setEmail(getEmail());
+		copy.setZoneinfo(getZoneinfo());
+		copy.setLocale(getLocale());
+		copy.setPhoneNumber(getPhoneNumber());
+		copy.setAddress(getAddress());
+		return copy;
+	}
+
 	@Override
 	public JsonObject toJson() {
 		if (obj == null) {
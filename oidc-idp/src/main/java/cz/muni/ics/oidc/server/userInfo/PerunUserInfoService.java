@@ -3,10 +3,19 @@ package cz.muni.ics.oidc.server.userInfo;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.TextNode;
+import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
 import com.google.common.cache.LoadingCache;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalListener;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListenableFutureTask;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.common.util.concurrent.UncheckedExecutionException;
+import cz.muni.ics.oidc.BeanUtil;
 import cz.muni.ics.oidc.exceptions.ConfigurationException;
 import cz.muni.ics.oidc.models.Facility;
 import cz.muni.ics.oidc.models.PerunAttributeValue;
@@ -19,6 +28,7 @@ import cz.muni.ics.oidc.server.claims.ClaimSource;
 import cz.muni.ics.oidc.server.claims.ClaimSourceInitContext;
 import cz.muni.ics.oidc.server.claims.ClaimSourceProduceContext;
 import cz.muni.ics.oidc.server.claims.PerunCustomClaimDefinition;
+import cz.muni.ics.oidc.server.claims.PerunCustomClaimDefinition.TimeoutFallback;
 import cz.muni.ics.oidc.server.claims.modifiers.NoOperationModifier;
 import cz.muni.ics.oidc.server.configurations.PerunOidcConfig;
 import org.mitre.jwt.signer.service.JWTSigningAndValidationService;
@@ -27,25 +37,38 @@ import org.mitre.oauth2.service.ClientDetailsEntityService;
 import org.mitre.openid.connect.model.Address;
 import org.mitre.openid.connect.model.DefaultAddress;
 import org.mitre.openid.connect.model.UserInfo;
+import org.mitre.openid.connect.service.ScopeClaimTranslationService;
 import org.mitre.openid.connect.service.UserInfoService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.util.StringUtils;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
 /**
@@ -61,6 +84,8 @@ public class PerunUserInfoService implements UserInfoService {
 	private static final String SOURCE = ".source";
 	private static final String CLASS = ".class";
 	private static final String MODIFIER = ".modifier";
+	private static final String TIMEOUT = ".timeout";
+	private static final String FALLBACK = ".fallback";
 
 	@Autowired
 	private ClientDetailsEntityService clientService;
@@ -71,10 +96,41 @@ public class PerunUserInfoService implements UserInfoService {
 	@Autowired
 	private PerunOidcConfig perunOidcConfig;
 
+	@Autowired
+	private BeanUtil beanUtil;
+
+	private volatile ScopeClaimTranslationService scopeClaimTranslator;
+
 	private List<String> forceRegenerateUserinfoCustomClaims = new ArrayList<>();
 	private List<String> forceRegenerateUserinfoStandardClaims = new ArrayList<>();
 
-	private final LoadingCache<UserClientPair, UserInfo> cache;
+	private LoadingCache<UserClientPair, UserInfo> cache;
+	private LoadingCache<Long, UserData> userCache;
+	private long userCacheMaxSize = 100;
+	private long userCacheExpireAfterWrite = 60;
+	private UserInfoSharedCache sharedCache;
+	private long cacheMaxSize = 100;
+	private long cacheExpireAfterAccess = 60;
+	private long cacheExpireAfterWrite = 0;
+	private long cacheRefreshAfterWrite = 0;
+	private int cacheRefreshMaxConcurrent = 4;
+	private int cacheRefreshQueueSize = 100;
+	private ThreadPoolExecutor refreshExecutor;
+	private final AtomicLong refreshScheduled = new AtomicLong();
+	private final AtomicLong refreshRejected = new AtomicLong();
+
+	private int claimsExecutorThreads = 0;
+	private long claimsTimeout = 10000;
+	private TimeoutFallback claimsTimeoutFallback = TimeoutFallback.LAST_VALUE;
+	private long claimsLastValuesTtl = 86400;
+	private long claimsRetryBackoff = 60;
+	private ThreadPoolExecutor claimsExecutor;
+	private Cache<UserClientPair, Map<String, JsonNode>> lastCustomClaimValues;
+	private Cache<UserClientPair, Set<String>> claimsInBackoff;
+	private final AtomicLong claimsTimedOut = new AtomicLong();
+	private final AtomicLong claimsRejected = new AtomicLong();
+	private final Map<RemovalCause, AtomicLong> cacheRemovals = new EnumMap<>(RemovalCause.class);
+	private final Map<String, Long> clientFacilities = new ConcurrentHashMap<>();
 
 	private PerunAdapter perunAdapter;
 	private Properties properties;
@@ -202,17 +258,131 @@ public class PerunUserInfoService implements UserInfoService {
 	}
 
 	public void setForceRegenerateUserinfoCustomClaims(String[] claims) {
-		this.forceRegenerateUserinfoCustomClaims = Arrays.asList(claims);
+		this.forceRegenerateUserinfoCustomClaims = toClaimNames(claims);
 	}
 
 	public void setForceRegenerateUserinfoStandardClaims(String[] claims) {
-		this.forceRegenerateUserinfoStandardClaims = Arrays.asList(claims);
+		this.forceRegenerateUserinfoStandardClaims = toClaimNames(claims);
+	}
+
+	private List<String> toClaimNames(String[] claims) {
+		// empty property is split to a single empty string
+		return Arrays.stream(claims)
+				.map(String::trim)
+				.filter(StringUtils::hasText)
+				.collect(Collectors.toList());
+	}
+
+	public void setSharedCache(UserInfoSharedCache sharedCache) {
+		this.sharedCache = sharedCache;
+	}
+
+	public void setCacheMaxSize(long cacheMaxSize) {
+		this.cacheMaxSize = cacheMaxSize;
+	}
+
+	public void setUserCacheMaxSize(long userCacheMaxSize) {
+		this.userCacheMaxSize = userCacheMaxSize;
+	}
+
+	public void setUserCacheExpireAfterWrite(long userCacheExpireAfterWrite) {
+		this.userCacheExpireAfterWrite = userCacheExpireAfterWrite;
+	}
+
+	public void setCacheExpireAfterAccess(long cacheExpireAfterAccess) {
+		this.cacheExpireAfterAccess = cacheExpireAfterAccess;
+	}
+
+	public void setCacheExpireAfterWrite(long cacheExpireAfterWrite) {
+		this.cacheExpireAfterWrite = cacheExpireAfterWrite;
+	}
+
+	public void setCacheRefreshAfterWrite(long cacheRefreshAfterWrite) {
+		this.cacheRefreshAfterWrite = cacheRefreshAfterWrite;
+	}
+
+	public void setCacheRefreshMaxConcurrent(int cacheRefreshMaxConcurrent) {
+		this.cacheRefreshMaxConcurrent = cacheRefreshMaxConcurrent;
+	}
+
+	public void setCacheRefreshQueueSize(int cacheRefreshQueueSize) {
+		this.cacheRefreshQueueSize = cacheRefreshQueueSize;
+	}
+
+	public void setClaimsExecutorThreads(int claimsExecutorThreads) {
+		this.claimsExecutorThreads = claimsExecutorThreads;
+	}
+
+	public void setClaimsTimeout(long claimsTimeout) {
+		this.claimsTimeout = claimsTimeout;
+	}
+
+	public void setClaimsTimeoutFallback(String claimsTimeoutFallback) {
+		this.claimsTimeoutFallback = TimeoutFallback.valueOf(claimsTimeoutFallback.toUpperCase());
+	}
+
+	public void setClaimsLastValuesTtl(long claimsLastValuesTtl) {
+		this.claimsLastValuesTtl = claimsLastValuesTtl;
+	}
+
+	public void setClaimsRetryBackoff(long claimsRetryBackoff) {
+		this.claimsRetryBackoff = claimsRetryBackoff;
 	}
 
 	public List<PerunCustomClaimDefinition> getCustomClaims() {
 		return customClaims;
 	}
 
+	/**
+	 * Get statistics of both tiers of the UserInfo cache.
+	 * @return Map with statistics of the local tier (key 'local'), the local cache of user-level data (key 'users')
+	 * and the shared tier (key 'shared').
+	 */
+	public Map<String, Object> getCacheStats() {
+		CacheStats localStats = cache.stats();
+		Map<String, Object> local = new LinkedHashMap<>();
+		local.put("size", cache.size());
+		local.put("hitCount", localStats.hitCount());
+		local.put("missCount", localStats.missCount());
+		local.put("hitRate", localStats.hitRate());
+		local.put("loadSuccessCount", localStats.loadSuccessCount());
+		local.put("loadExceptionCount", localStats.loadExceptionCount());
+		local.put("averageLoadPenaltyMillis", TimeUnit.NANOSECONDS.toMillis((long) localStats.averageLoadPenalty()));
+		local.put("evictionCount", localStats.evictionCount());
+		for (Map.Entry<RemovalCause, AtomicLong> removal : cacheRemovals.entrySet()) {
+			local.put("removed" + removal.getKey().name(), removal.getValue().get());
+		}
+		if (refreshExecutor != null) {
+			local.put("refreshScheduledCount", refreshScheduled.get());
+			local.put("refreshRejectedCount", refreshRejected.get());
+			local.put("refreshActiveCount", refreshExecutor.getActiveCount());
+			local.put("refreshQueuedCount", refreshExecutor.getQueue().size());
+		}
+		if (claimsExecutor != null) {
+			local.put("claimsTimedOutCount", claimsTimedOut.get());
+			local.put("claimsRejectedCount", claimsRejected.get());
+			local.put("claimsActiveCount", claimsExecutor.getActiveCount());
+		}
+
+		CacheStats userStats = userCache.stats();
+		Map<String, Object> users = new LinkedHashMap<>();
+		users.put("size", userCache.size());
+		users.put("hitCount", userStats.hitCount());
+		users.put("missCount", userStats.missCount());
+		users.put("hitRate", userStats.hitRate());
+		users.put("loadSuccessCount", userStats.loadSuccessCount());
+		users.put("loadExceptionCount", userStats.loadExceptionCount());
+		users.put("averageLoadPenaltyMillis", TimeUnit.NANOSECONDS.toMillis((long) userStats.averageLoadPenalty()));
+
+		Map<String, Object> stats = new LinkedHashMap<>();
+		stats.put("local", local);
+		stats.put("users", users);
+		if (sharedCache != null && sharedCache.isEnabled()) {
+			stats.put("shared", sharedCache.getStats());
+		}
+		return stats;
+	}
+
 	@PostConstruct
 	public void postInit() throws ConfigurationException {
 		log.debug("trying to load modifier for attribute.openid.sub");
@@ -232,15 +402,63 @@ public class PerunUserInfoService implements UserInfoService {
 			ClaimSource claimSource = loadClaimSource(claimName, propertyBase + SOURCE);
 			//optional claim value modifier
 			ClaimModifier claimModifier = loadClaimValueModifier(claimName, propertyBase + MODIFIER);
+			//optional timeout for parallel production
+			long timeout = Long.parseLong(properties.getProperty(propertyBase + TIMEOUT, String.valueOf(claimsTimeout)));
+			TimeoutFallback fallback = TimeoutFallback.valueOf(properties.getProperty(propertyBase + TIMEOUT + FALLBACK,
+					claimsTimeoutFallback.name()).toUpperCase());
 			//add claim definition
-			customClaims.add(new PerunCustomClaimDefinition(scope, claimName, claimSource, claimModifier));
+			customClaims.add(new PerunCustomClaimDefinition(scope, claimName, claimSource, claimModifier, timeout, fallback));
+		}
+
+		if (claimsExecutorThreads > 0) {
+			// when the queue is full, the claim is rejected and handled like the timed out one, running it
+			// in the calling thread would not be limited by the timeout
+			claimsExecutor = new ThreadPoolExecutor(claimsExecutorThreads, claimsExecutorThreads,
+					60L, TimeUnit.SECONDS, new ArrayBlockingQueue<>(claimsExecutorThreads * 10),
+					new ThreadFactoryBuilder().setNameFormat("userinfo-claims-%d").setDaemon(true).build(),
+					new ThreadPoolExecutor.AbortPolicy());
+			claimsExecutor.allowCoreThreadTimeOut(true);
+			lastCustomClaimValues = CacheBuilder.newBuilder()
+					.maximumSize(cacheMaxSize)
+					.expireAfterWrite(claimsLastValuesTtl, TimeUnit.SECONDS)
+					.build();
+			claimsInBackoff = CacheBuilder.newBuilder()
+					.maximumSize(cacheMaxSize)
+					.expireAfterWrite(Math.max(1, claimsRetryBackoff), TimeUnit.SECONDS)
+					.build();
+			log.info("custom claims produced in parallel - threads: {}, default timeout: {}ms, default fallback: {}",
+					claimsExecutorThreads, claimsTimeout, claimsTimeoutFallback);
 		}
 
 		this.userInfoModifierContext = new UserInfoModifierContext(properties, perunAdapter);
+		this.userCache = buildUserCache();
+		this.cache = buildCache();
+	}
+
+	@PreDestroy
+	public void preDestroy() {
+		if (refreshExecutor != null) {
+			refreshExecutor.shutdownNow();
+		}
+		if (claimsExecutor != null) {
+			claimsExecutor.shutdownNow();
+		}
 	}
 
 	@Override
 	public UserInfo getByUsernameAndClientId(String username, String clientId) {
+		return getByUsernameAndClientId(username, clientId, null);
+	}
+
+	/**
+	 * Get UserInfo containing at least the custom claims released by the given scopes. Claims of other scopes
+	 * might be missing if they have not been requested before.
+	 * @param username Username (ID of the user in Perun).
+	 * @param clientId Client ID.
+	 * @param scopes Scopes of the request, NULL to produce claims for all scopes registered for the client.
+	 * @return UserInfo or NULL if it cannot be obtained.
+	 */
+	public UserInfo getByUsernameAndClientId(String username, String clientId, Set<String> scopes) {
 		ClientDetailsEntity client = clientService.loadClientByClientId(clientId);
 		if (client == null) {
 			log.warn("did not found client with id {}", clientId);
@@ -249,12 +467,12 @@ public class PerunUserInfoService implements UserInfoService {
 
 		PerunUserInfo userInfo;
 		try {
-			UserClientPair cacheKey = new UserClientPair(username, clientId, client);
-			userInfo = (PerunUserInfo) cache.get(cacheKey);
+			UserClientPair cacheKey = new UserClientPair(username, clientId, client, scopes);
+			userInfo = fillMissingCustomClaims(cacheKey, (PerunUserInfo) cache.get(cacheKey));
 			if (!checkStandardClaims(userInfo) || !checkCustomClaims(userInfo)) {
 				log.info("Some required claim is null, regenerate userInfo");
-				cache.invalidate(cacheKey);
-				userInfo = (PerunUserInfo) cache.get(cacheKey);
+				invalidate(cacheKey);
+				userInfo = fillMissingCustomClaims(cacheKey, (PerunUserInfo) cache.get(cacheKey));
 			}
 			log.debug("loaded UserInfo from cache for '{}'/'{}'", userInfo.getName(), client.getClientName());
 			userInfo = userInfoModifierContext.modify(userInfo, clientId);
@@ -274,7 +492,7 @@ public class PerunUserInfoService implements UserInfoService {
 			userInfo = (PerunUserInfo) cache.get(cacheKey);
 			if (!checkStandardClaims(userInfo) || !checkCustomClaims(userInfo)) {
 				log.info("Some required claim is null, regenerate userInfo");
-				cache.invalidate(cacheKey);
+				invalidate(cacheKey);
 				userInfo = (PerunUserInfo) cache.get(cacheKey);
 			}
 			log.debug("loaded UserInfo from cache for '{}'", userInfo.getName());
@@ -292,11 +510,191 @@ public class PerunUserInfoService implements UserInfoService {
 		throw new RuntimeException("PerunUserInfoService.getByEmailAddress() not implemented");
 	}
 
-	public PerunUserInfoService() {
-		this.cache = CacheBuilder.newBuilder()
-				.maximumSize(100)
-				.expireAfterAccess(60, TimeUnit.SECONDS)
-				.build(cacheLoader);
+	/**
+	 * Invalidate all cached data of the user, in all tiers of the cache.
+	 * @param userId ID of the user.
+	 */
+	public void invalidateUser(long userId) {
+		log.debug("invalidating cached UserInfo objects of user {}", userId);
+		cache.asMap().keySet().removeIf(key -> key.getUserId() == userId);
+		userCache.invalidate(userId);
+		if (isSharedCacheEnabled()) {
+			sharedCache.invalidateUser(userId);
+		}
+	}
+
+	/**
+	 * Invalidate cached data of the current members of the group, in all tiers of the cache. Users removed
+	 * from the group are not members anymore, so the change of membership has to be reported as the change
+	 * of the user. When the members cannot be resolved, the local tier is cleared and the shared tier
+	 * is left to expire (this node cannot tell which of its entries are affected).
+	 * @param groupId ID of the group.
+	 */
+	public void invalidateGroup(long groupId) {
+		Set<Long> userIds = null;
+		if (perunAdapter.getAdapterRpc() != null) {
+			try {
+				userIds = perunAdapter.getAdapterRpc().getGroupMembersUserIds(groupId);
+			} catch (RuntimeException e) {
+				log.warn("cannot resolve members of group {}", groupId);
+				log.debug("details:", e);
+			}
+		}
+		if (userIds == null) {
+			log.debug("invalidating all local UserInfo objects after change of group {}", groupId);
+			cache.invalidateAll();
+			return;
+		}
+
+		Set<Long> members = userIds;
+		log.debug("invalidating cached UserInfo objects of {} members of group {}", members.size(), groupId);
+		cache.asMap().keySet().removeIf(key -> members.contains(key.getUserId()));
+		userCache.invalidateAll(members);
+		if (isSharedCacheEnabled()) {
+			sharedCache.invalidateUsers(members);
+		}
+	}
+
+	/**
+	 * Invalidate cached data of all users released to the clients of the facility. Only clients for which
+	 * UserInfo has been produced by this node are known.
+	 * @param facilityId ID of the facility.
+	 */
+	public void invalidateFacility(long facilityId) {
+		Set<String> clientIds = clientFacilities.entrySet().stream()
+				.filter(entry -> entry.getValue() == facilityId)
+				.map(Map.Entry::getKey)
+				.collect(Collectors.toSet());
+		log.debug("invalidating cached UserInfo objects of clients {} of facility {}", clientIds, facilityId);
+		if (clientIds.isEmpty()) {
+			return;
+		}
+		cache.asMap().keySet().removeIf(key -> clientIds.contains(key.getClientId()));
+		if (isSharedCacheEnabled()) {
+			clientIds.forEach(sharedCache::invalidateClient);
+		}
+	}
+
+	private LoadingCache<UserClientPair, UserInfo> buildCache() {
+		for (RemovalCause cause : RemovalCause.values()) {
+			cacheRemovals.put(cause, new AtomicLong());
+		}
+		RemovalListener<UserClientPair, UserInfo> removalListener = notification -> {
+			log.trace("removed UserInfo for {} from cache, cause {}", notification.getKey(), notification.getCause());
+			cacheRemovals.get(notification.getCause()).incrementAndGet();
+		};
+
+		CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder()
+				.maximumSize(cacheMaxSize)
+				.recordStats();
+		if (cacheExpireAfterAccess > 0) {
+			builder.expireAfterAccess(cacheExpireAfterAccess, TimeUnit.SECONDS);
+		}
+		if (cacheExpireAfterWrite > 0) {
+			builder.expireAfterWrite(cacheExpireAfterWrite, TimeUnit.SECONDS);
+		}
+		if (cacheRefreshAfterWrite > 0) {
+			if (cacheExpireAfterWrite <= 0 || cacheExpireAfterWrite <= cacheRefreshAfterWrite) {
+				log.warn("UserInfo cache - expireAfterWrite ({}s) should be greater than refreshAfterWrite ({}s), " +
+						"otherwise it does not bound the staleness of refreshed entries",
+						cacheExpireAfterWrite, cacheRefreshAfterWrite);
+			}
+			refreshExecutor = new ThreadPoolExecutor(cacheRefreshMaxConcurrent, cacheRefreshMaxConcurrent,
+					60L, TimeUnit.SECONDS, new ArrayBlockingQueue<>(cacheRefreshQueueSize),
+					new ThreadFactoryBuilder().setNameFormat("userinfo-refresh-%d").setDaemon(true).build());
+			refreshExecutor.allowCoreThreadTimeOut(true);
+			builder.refreshAfterWrite(cacheRefreshAfterWrite, TimeUnit.SECONDS);
+		}
+		log.info("UserInfo cache - maxSize: {}, expireAfterAccess: {}s, expireAfterWrite: {}s, refreshAfterWrite: {}s, " +
+						"shared tier enabled: {}", cacheMaxSize, cacheExpireAfterAccess, cacheExpireAfterWrite,
+				cacheRefreshAfterWrite, isSharedCacheEnabled());
+
+		return builder.removalListener(removalListener).build(cacheLoader);
+	}
+
+	private LoadingCache<Long, UserData> buildUserCache() {
+		log.info("UserInfo cache of users - maxSize: {}, expireAfterWrite: {}s", userCacheMaxSize, userCacheExpireAfterWrite);
+		return CacheBuilder.newBuilder()
+				.maximumSize(userCacheMaxSize)
+				.expireAfterWrite(userCacheExpireAfterWrite, TimeUnit.SECONDS)
+				.recordStats()
+				.build(new CacheLoader<Long, UserData>() {
+					@Override
+					public UserData load(Long userId) {
+						return loadUserData(userId);
+					}
+				});
+	}
+
+	private ScopeClaimTranslationService getScopeClaimTranslator() {
+		// translator depends on this service, so it cannot be injected at the time of creation
+		if (scopeClaimTranslator == null) {
+			scopeClaimTranslator = beanUtil.getBean("scopeClaimTranslator", ScopeClaimTranslationService.class);
+		}
+		return scopeClaimTranslator;
+	}
+
+	/**
+	 * Get names of the custom claims which are released by the scopes of the request (or the client).
+	 * @param key Cache key.
+	 * @return Set of claim names, NULL if all claims should be produced.
+	 */
+	private Set<String> getRequestedCustomClaims(UserClientPair key) {
+		if (key.getClient() == null) {
+			return null;
+		}
+		Set<String> scopes = key.getScopes() != null ? key.getScopes() : key.getClient().getScope();
+		if (scopes == null) {
+			return null;
+		}
+		return getScopeClaimTranslator().getClaimsForScopeSet(scopes);
+	}
+
+	/**
+	 * Produce custom claims that are requested but have not been produced for the cached UserInfo yet.
+	 * The cached object is not modified, a new one is created and replaces it in the cache. Claims that have
+	 * not been produced in time are not produced again until their retry backoff passes.
+	 */
+	private PerunUserInfo fillMissingCustomClaims(UserClientPair key, PerunUserInfo userInfo) throws ExecutionException {
+		Set<String> requested = getRequestedCustomClaims(key);
+		Set<String> missing = customClaims.stream()
+				.map(PerunCustomClaimDefinition::getClaim)
+				.filter(claim -> requested == null || requested.contains(claim))
+				.filter(claim -> !userInfo.getResolvedCustomClaims().contains(claim))
+				.filter(claim -> !isInBackoff(key, claim))
+				.collect(Collectors.toSet());
+		if (missing.isEmpty()) {
+			return userInfo;
+		}
+
+		log.debug("producing missing custom claims {} for {}", missing, key);
+		PerunUserInfo filled = userInfo.copy();
+		addCustomClaims(filled, userCache.get(key.getUserId()), key, missing);
+		cache.put(key, filled);
+		if (isSharedCacheEnabled()) {
+			sharedCache.put(key.getUserId(), key.getClientId(), filled);
+		}
+		return filled;
+	}
+
+	private boolean isInBackoff(UserClientPair key, String claim) {
+		if (claimsInBackoff == null) {
+			return false;
+		}
+		Set<String> claims = claimsInBackoff.getIfPresent(key);
+		return claims != null && claims.contains(claim);
+	}
+
+	private void invalidate(UserClientPair key) {
+		cache.invalidate(key);
+		userCache.invalidate(key.getUserId());
+		if (isSharedCacheEnabled()) {
+			sharedCache.invalidate(key.getUserId(), key.getClientId());
+		}
+	}
+
+	private boolean isSharedCacheEnabled() {
+		return sharedCache != null && sharedCache.isEnabled();
 	}
 
 	private ClaimModifier loadClaimValueModifier(String claimName, String propertyPrefix) throws ConfigurationException {
@@ -370,19 +768,48 @@ public class PerunUserInfoService implements UserInfoService {
 		}
 	}
 
+	/**
+	 * Data of the user which do not depend on the client - attributes, standard claims and values of custom claims
+	 * produced by the sources which are not client dependent.
+	 */
+	private static class UserData {
+		private final PerunUserInfo userInfo;
+		private final Map<String, PerunAttributeValue> attributes;
+
+		UserData(PerunUserInfo userInfo, Map<String, PerunAttributeValue> attributes) {
+			this.userInfo = userInfo;
+			this.attributes = attributes;
+		}
+
+		public PerunUserInfo getUserInfo() {
+			return userInfo;
+		}
+
+		public Map<String, PerunAttributeValue> getAttributes() {
+			return attributes;
+		}
+	}
+
 	private static class UserClientPair {
 		private final long userId;
 		private String clientId;
 		private ClientDetailsEntity client;
+		private Set<String> scopes;
 
 		UserClientPair(String userId) {
 			this.userId = Long.parseLong(userId);
 		}
 
-		UserClientPair(String userId, String clientId, ClientDetailsEntity client) {
+		UserClientPair(long userId, String clientId) {
+			this.userId = userId;
+			this.clientId = clientId;
+		}
+
+		UserClientPair(String userId, String clientId, ClientDetailsEntity client, Set<String> scopes) {
 			this.userId = Long.parseLong(userId);
 			this.clientId = clientId;
 			this.client = client;
+			this.scopes = scopes;
 		}
 
 		public long getUserId() {
@@ -397,6 +824,10 @@ public class PerunUserInfoService implements UserInfoService {
 			return client;
 		}
 
+		public Set<String> getScopes() {
+			return scopes;
+		}
+
 		@Override
 		public boolean equals(Object o) {
 			if (this == o) return true;
@@ -420,120 +851,366 @@ public class PerunUserInfoService implements UserInfoService {
 	@SuppressWarnings("FieldCanBeLocal")
 	private CacheLoader<UserClientPair, UserInfo> cacheLoader = new CacheLoader<UserClientPair, UserInfo>() {
 		@Override
-		public UserInfo load(UserClientPair pair) {
-			log.debug("load({}) ... populating cache for the key", pair);
-			PerunUserInfo ui = new PerunUserInfo();
-			long perunUserId = pair.getUserId();
-
-			Map<String, PerunAttributeValue> userAttributeValues = perunAdapter.getUserAttributeValues(perunUserId, userAttrNames);
-
-			if (shouldFillAttrs(userAttributeValues)) {
-				List<String> attrNames = userAttributeValues.entrySet()
-						.stream()
-						.filter(entry -> (null == entry.getValue() || entry.getValue().isNullValue()))
-						.map(Map.Entry::getKey)
-						.collect(Collectors.toList());
-				Map<String, PerunAttributeValue> missingAttrs = perunAdapter.getAdapterFallback()
-						.getUserAttributeValues(perunUserId, attrNames);
-				for (Map.Entry<String, PerunAttributeValue> entry : missingAttrs.entrySet()) {
-					userAttributeValues.put(entry.getKey(), entry.getValue());
+		public UserInfo load(UserClientPair pair) throws ExecutionException {
+			if (isSharedCacheEnabled()) {
+				PerunUserInfo shared = sharedCache.get(pair.getUserId(), pair.getClientId());
+				if (shared != null) {
+					log.debug("load({}) ... UserInfo found in shared cache", pair);
+					return shared;
 				}
 			}
 
-			String sub = userAttributeValues.get(subAttribute).valueAsString();
-			if (sub == null) {
-				throw new RuntimeException("cannot get sub from attribute " + subAttribute + " for username " + perunUserId);
+			log.debug("load({}) ... populating cache for the key", pair);
+			PerunUserInfo ui = assembleUserInfo(pair, userCache.get(pair.getUserId()), getRequestedCustomClaims(pair));
+			if (isSharedCacheEnabled()) {
+				sharedCache.put(pair.getUserId(), pair.getClientId(), ui);
 			}
-			if (subModifier != null) {
-				//transform sub value
-				sub = subModifier.modify(sub);
+			return ui;
+		}
+
+		@Override
+		public ListenableFuture<UserInfo> reload(UserClientPair pair, UserInfo oldValue) {
+			if (refreshExecutor == null) {
+				return Futures.immediateFuture(load(pair));
 			}
 
-			ui.setId(perunUserId);
-			ui.setSub(sub); // Subject - Identifier for the End-User at the Issuer.
-
-			ui.setPreferredUsername(userAttributeValues.get(preferredUsernameAttribute).valueAsString()); // Shorthand name by which the End-User wishes to be referred to at the RP
-			ui.setGivenName(userAttributeValues.get(givenNameAttribute).valueAsString()); //  Given name(s) or first name(s) of the End-User
-			ui.setFamilyName(userAttributeValues.get(familyNameAttribute).valueAsString()); // Surname(s) or last name(s) of the End-User
-			ui.setMiddleName(userAttributeValues.get(middleNameAttribute).valueAsString()); //  Middle name(s) of the End-User
-			ui.setName(userAttributeValues.get(fullNameAttribute).valueAsString()); // End-User's full name
-			//ui.setNickname(); // Casual name of the End-User
-			//ui.setProfile(); //  URL of the End-User's profile page.
-			//ui.setPicture(); // URL of the End-User's profile picture.
-			//ui.setWebsite(); // URL of the End-User's Web page or blog.
-			ui.setEmail(userAttributeValues.get(emailAttribute).valueAsString()); // End-User's preferred e-mail address.
-			//ui.setEmailVerified(true); // True if the End-User's e-mail address has been verified
-			//ui.setGender("male"); // End-User's gender. Values defined by this specification are female and male.
-			//ui.setBirthdate("1975-01-01");//End-User's birthday, represented as an ISO 8601:2004 [ISO8601‑2004] YYYY-MM-DD format.
-			ui.setZoneinfo(userAttributeValues.get(zoneinfoAttribute).valueAsString());//String from zoneinfo [zoneinfo] time zone database, For example, Europe/Paris
-			ui.setLocale(userAttributeValues.get(localeAttribute).valueAsString()); //  For example, en-US or fr-CA.
-			ui.setPhoneNumber(userAttributeValues.get(phoneAttribute).valueAsString()); //[E.164] is RECOMMENDED as the format, for example, +1 (425) 555-121
-			//ui.setPhoneNumberVerified(true); // True if the End-User's phone number has been verified
-			//ui.setUpdatedTime(Long.toString(System.currentTimeMillis()/1000L));// value is a JSON number representing the number of seconds from 1970-01-01T0:0:0Z as measured in UTC until the date/time
-			Address address = null;
-			if (StringUtils.hasText(userAttributeValues.get(addressAttribute).valueAsString())) {
-				address = new DefaultAddress();
-				address.setFormatted(userAttributeValues.get(addressAttribute).valueAsString());
-				//address.setStreetAddress("Šumavská 15");
-				//address.setLocality("Brno");
-				//address.setPostalCode("61200");
-				//address.setCountry("Czech Republic");
+			// value from the shared tier might be the same one as we already have, always go to Perun
+			ListenableFutureTask<UserInfo> task = ListenableFutureTask.create(() -> {
+				log.debug("reload({}) ... refreshing UserInfo in background", pair);
+				// keep also the claims that have been produced on demand for the old value
+				Set<String> claimNames = getRequestedCustomClaims(pair);
+				if (claimNames != null) {
+					claimNames = new HashSet<>(claimNames);
+					claimNames.addAll(((PerunUserInfo) oldValue).getResolvedCustomClaims());
+				}
+				UserData userData = loadUserData(pair.getUserId());
+				userCache.put(pair.getUserId(), userData);
+				PerunUserInfo ui = assembleUserInfo(pair, userData, claimNames);
+				if (isSharedCacheEnabled()) {
+					sharedCache.put(pair.getUserId(), pair.getClientId(), ui);
+				}
+				return ui;
+			});
+			try {
+				refreshExecutor.execute(task);
+				refreshScheduled.incrementAndGet();
+			} catch (RejectedExecutionException e) {
+				refreshRejected.incrementAndGet();
+				log.debug("reload({}) ... too many refreshes in progress, keeping old value", pair);
+				// a failed future would be logged by the cache with the stack trace on each rejection,
+				// the old value is kept instead and the refresh is retried after refreshAfterWrite
+				return Futures.immediateFuture(oldValue);
 			}
-			ui.setAddress(address);
-			//custom claims
-			ClaimContextCommonParameters contextCommonParameters = getClaimContextCommonParameters(perunUserId,
-					pair.getClientId(), perunAdapter);
-			ClaimSourceProduceContext pctx = new ClaimSourceProduceContext(perunUserId, sub, userAttributeValues,
-					perunAdapter, pair.getClient(), contextCommonParameters);
-			log.debug("processing custom claims");
+			return task;
+		}
+
+		private PerunUserInfo assembleUserInfo(UserClientPair pair, UserData userData, Set<String> claimNames) {
+			PerunUserInfo ui = userData.getUserInfo().copyStandardClaims();
+			addCustomClaims(ui, userData, pair, claimNames);
+			log.debug("UserInfo created");
+			return ui;
+		}
+	};
+
+	/**
+	 * Load attributes of the user and build the standard claims from them.
+	 * @param perunUserId ID of the user.
+	 * @return Data of the user which do not depend on the client.
+	 */
+	private UserData loadUserData(long perunUserId) {
+		log.debug("loadUserData({}) ... fetching attributes of the user", perunUserId);
+		PerunUserInfo ui = new PerunUserInfo();
+		Map<String, PerunAttributeValue> userAttributeValues = fetchUserAttributes(perunUserId);
+
+		String sub = userAttributeValues.get(subAttribute).valueAsString();
+		if (sub == null) {
+			throw new RuntimeException("cannot get sub from attribute " + subAttribute + " for username " + perunUserId);
+		}
+		if (subModifier != null) {
+			//transform sub value
+			sub = subModifier.modify(sub);
+		}
+
+		ui.setId(perunUserId);
+		ui.setSub(sub); // Subject - Identifier for the End-User at the Issuer.
+
+		ui.setPreferredUsername(userAttributeValues.get(preferredUsernameAttribute).valueAsString()); // Shorthand name by which the End-User wishes to be referred to at the RP
+		ui.setGivenName(userAttributeValues.get(givenNameAttribute).valueAsString()); //  Given name(s) or first name(s) of the End-User
+		ui.setFamilyName(userAttributeValues.get(familyNameAttribute).valueAsString()); // Surname(s) or last name(s) of the End-User
+		ui.setMiddleName(userAttributeValues.get(middleNameAttribute).valueAsString()); //  Middle name(s) of the End-User
+		ui.setName(userAttributeValues.get(fullNameAttribute).valueAsString()); // End-User's full name
+		//ui.setNickname(); // Casual name of the End-User
+		//ui.setProfile(); //  URL of the End-User's profile page.
+		//ui.setPicture(); // URL of the End-User's profile picture.
+		//ui.setWebsite(); // URL of the End-User's Web page or blog.
+		ui.setEmail(userAttributeValues.get(emailAttribute).valueAsString()); // End-User's preferred e-mail address.
+		//ui.setEmailVerified(true); // True if the End-User's e-mail address has been verified
+		//ui.setGender("male"); // End-User's gender. Values defined by this specification are female and male.
+		//ui.setBirthdate("1975-01-01");//End-User's birthday, represented as an ISO 8601:2004 [ISO8601‑2004] YYYY-MM-DD format.
+		ui.setZoneinfo(userAttributeValues.get(zoneinfoAttribute).valueAsString());//String from zoneinfo [zoneinfo] time zone database, For example, Europe/Paris
+		ui.setLocale(userAttributeValues.get(localeAttribute).valueAsString()); //  For example, en-US or fr-CA.
+		ui.setPhoneNumber(userAttributeValues.get(phoneAttribute).valueAsString()); //[E.164] is RECOMMENDED as the format, for example, +1 (425) 555-121
+		//ui.setPhoneNumberVerified(true); // True if the End-User's phone number has been verified
+		//ui.setUpdatedTime(Long.toString(System.currentTimeMillis()/1000L));// value is a JSON number representing the number of seconds from 1970-01-01T0:0:0Z as measured in UTC until the date/time
+		Address address = null;
+		if (StringUtils.hasText(userAttributeValues.get(addressAttribute).valueAsString())) {
+			address = new DefaultAddress();
+			address.setFormatted(userAttributeValues.get(addressAttribute).valueAsString());
+			//address.setStreetAddress("Šumavská 15");
+			//address.setLocality("Brno");
+			//address.setPostalCode("61200");
+			//address.setCountry("Czech Republic");
+		}
+		ui.setAddress(address);
+		return new UserData(ui, userAttributeValues);
+	}
+
+	/**
+	 * Add requested custom claims to the UserInfo. Claims whose sources do not depend on the client are taken from
+	 * (or produced into) the data of the user, so they are shared among all clients. Other claims are produced
+	 * for the client.
+	 * @param ui UserInfo to be filled.
+	 * @param userData Cached data of the user.
+	 * @param pair Key identifying the user and the client.
+	 * @param claimNames Names of claims to be added, NULL to add all configured custom claims.
+	 */
+	private void addCustomClaims(PerunUserInfo ui, UserData userData, UserClientPair pair, Set<String> claimNames) {
+		PerunUserInfo userLevelClaims = userData.getUserInfo();
+		Set<String> userLevel = new HashSet<>();
+		Set<String> toProduce = new HashSet<>();
+		synchronized (userData) {
 			for (PerunCustomClaimDefinition pccd : customClaims) {
-				log.debug("producing value for custom claim {}", pccd.getClaim());
-				JsonNode claimInJson = pccd.getClaimSource().produceValue(pctx);
-				log.debug("produced value {}={}", pccd.getClaim(), claimInJson);
-				if (claimInJson == null || claimInJson.isNull()) {
-					log.debug("claim {} is null", pccd.getClaim());
-					continue;
-				} else if (claimInJson.isTextual() && !StringUtils.hasText(claimInJson.asText())) {
-					log.debug("claim {} is a string and it is empty or null", pccd.getClaim());
-					continue;
-				} else if ((claimInJson.isArray() || claimInJson.isObject()) && claimInJson.size() == 0) {
-					log.debug("claim {} is an object or array and it is empty or null", pccd.getClaim());
+				String claim = pccd.getClaim();
+				if (claimNames != null && !claimNames.contains(claim)) {
 					continue;
 				}
-				ClaimModifier claimModifier = pccd.getClaimModifier();
-				if (claimModifier != null) {
-					log.debug("modifying values of claim '{}' using {}", pccd.getClaim(), claimModifier);
-					//transform values
-					if (claimInJson.isTextual()) {
-						//transform a simple string value
-						claimInJson = TextNode.valueOf(claimModifier.modify(claimInJson.asText()));
-					} else if (claimInJson.isArray()) {
-						claimInJson = claimInJson.deepCopy();
-						//transform all strings in an array
-						ArrayNode arrayNode = (ArrayNode) claimInJson;
-						for (int i = 0; i < arrayNode.size(); i++) {
-							JsonNode item = arrayNode.get(i);
-							if (item.isTextual()) {
-								String original = item.asText();
-								String modified = claimModifier.modify(original);
-								arrayNode.set(i, TextNode.valueOf(modified));
-							}
+				if (!pccd.getClaimSource().isClientDependent()) {
+					userLevel.add(claim);
+					if (userLevelClaims.getResolvedCustomClaims().contains(claim)) {
+						continue;
+					}
+				}
+				toProduce.add(claim);
+			}
+		}
+
+		if (!toProduce.isEmpty()) {
+			// lock is not held while producing, the same user-level claim might be produced concurrently
+			PerunUserInfo produced = new PerunUserInfo();
+			ClaimSourceProduceContext pctx = new ClaimSourceProduceContext(pair.getUserId(), userLevelClaims.getSub(),
+					userData.getAttributes(), perunAdapter, pair.getClient(),
+					getClaimContextCommonParameters(pair.getClientId()));
+			produceCustomClaims(produced, pctx, toProduce);
+			ui.getCustomClaims().putAll(produced.getCustomClaims());
+			ui.getResolvedCustomClaims().addAll(produced.getResolvedCustomClaims());
+			synchronized (userData) {
+				for (String claim : userLevel) {
+					if (produced.getResolvedCustomClaims().contains(claim)) {
+						userLevelClaims.getResolvedCustomClaims().add(claim);
+						if (produced.getCustomClaims().containsKey(claim)) {
+							userLevelClaims.getCustomClaims().put(claim, produced.getCustomClaims().get(claim));
 						}
 					}
 				}
-				ui.getCustomClaims().put(pccd.getClaim(), claimInJson);
 			}
-			log.debug("UserInfo created");
-			return ui;
 		}
 
-		private ClaimContextCommonParameters getClaimContextCommonParameters(long perunUserId, String clientId,
-																			 PerunAdapter perunAdapter)
+		synchronized (userData) {
+			for (String claim : userLevel) {
+				if (userLevelClaims.getResolvedCustomClaims().contains(claim)) {
+					ui.getResolvedCustomClaims().add(claim);
+					if (userLevelClaims.getCustomClaims().containsKey(claim)) {
+						ui.getCustomClaims().put(claim, userLevelClaims.getCustomClaims().get(claim));
+					}
+				}
+			}
+		}
+	}
+
+	private Map<String, PerunAttributeValue> fetchUserAttributes(long perunUserId) {
+		// the result of the adapter is not modified, it can be shared (e.g. by the request memo)
+		Map<String, PerunAttributeValue> userAttributeValues =
+				new HashMap<>(perunAdapter.getUserAttributeValues(perunUserId, userAttrNames));
+
+		if (shouldFillAttrs(userAttributeValues)) {
+			List<String> attrNames = userAttributeValues.entrySet()
+					.stream()
+					.filter(entry -> (null == entry.getValue() || entry.getValue().isNullValue()))
+					.map(Map.Entry::getKey)
+					.collect(Collectors.toList());
+			Map<String, PerunAttributeValue> missingAttrs = perunAdapter.getAdapterFallback()
+					.getUserAttributeValues(perunUserId, attrNames);
+			for (Map.Entry<String, PerunAttributeValue> entry : missingAttrs.entrySet()) {
+				userAttributeValues.put(entry.getKey(), entry.getValue());
+			}
+		}
+
+		return userAttributeValues;
+	}
+
+	private ClaimContextCommonParameters getClaimContextCommonParameters(String clientId) {
+		Facility facility = perunAdapter.getFacilityByClientId(clientId);
+		if (clientId != null && facility != null && facility.getId() != null) {
+			// remembered for invalidation of the entries when the facility changes
+			clientFacilities.put(clientId, facility.getId());
+		}
+		return new ClaimContextCommonParameters(facility);
+	}
+
+	/**
+	 * Produce values of custom claims and put them into the UserInfo. If the executor for claims is configured,
+	 * claims are produced in parallel, each of them limited by its timeout.
+	 * @param ui UserInfo to be filled.
+	 * @param pctx Context for the claim sources.
+	 * @param claimNames Names of claims to be produced, NULL to produce all configured custom claims.
+	 */
+	private void produceCustomClaims(PerunUserInfo ui, ClaimSourceProduceContext pctx, Set<String> claimNames) {
+		log.debug("processing custom claims");
+		List<PerunCustomClaimDefinition> requested = customClaims.stream()
+				.filter(pccd -> claimNames == null || claimNames.contains(pccd.getClaim()))
+				.collect(Collectors.toList());
+
+		if (claimsExecutor == null || requested.size() < 2) {
+			for (PerunCustomClaimDefinition pccd : requested) {
+				ui.getResolvedCustomClaims().add(pccd.getClaim());
+				JsonNode claimInJson = produceCustomClaimValue(pccd, pctx);
+				if (claimInJson != null) {
+					ui.getCustomClaims().put(pccd.getClaim(), claimInJson);
+				}
+			}
+			return;
+		}
+
+		UserClientPair lastValuesKey = new UserClientPair(pctx.getPerunUserId(),
+				pctx.getClient() == null ? null : pctx.getClient().getClientId());
+		Map<String, JsonNode> lastValues = lastCustomClaimValues.getIfPresent(lastValuesKey);
+		Map<String, JsonNode> producedValues = new LinkedHashMap<>();
+		Map<String, String> mdc = MDC.getCopyOfContextMap();
+		long start = System.currentTimeMillis();
+
+		Set<String> failedClaims = new HashSet<>();
+		Map<PerunCustomClaimDefinition, Future<JsonNode>> futures = new LinkedHashMap<>();
+		for (PerunCustomClaimDefinition pccd : requested) {
+			try {
+				futures.put(pccd, claimsExecutor.submit(() -> {
+					if (mdc != null) {
+						MDC.setContextMap(mdc);
+					}
+					try {
+						return produceCustomClaimValue(pccd, pctx);
+					} finally {
+						MDC.clear();
+					}
+				}));
+			} catch (RejectedExecutionException e) {
+				claimsRejected.incrementAndGet();
+				failedClaims.add(pccd.getClaim());
+				applyTimeoutFallback(ui, pccd, lastValues, "rejected, all threads producing claims are busy");
+			}
+		}
+
+		for (Map.Entry<PerunCustomClaimDefinition, Future<JsonNode>> entry : futures.entrySet()) {
+			PerunCustomClaimDefinition pccd = entry.getKey();
+			long remaining = start + pccd.getTimeout() - System.currentTimeMillis();
+			try {
+				JsonNode claimInJson = entry.getValue().get(Math.max(remaining, 0), TimeUnit.MILLISECONDS);
+				ui.getResolvedCustomClaims().add(pccd.getClaim());
+				if (claimInJson != null) {
+					ui.getCustomClaims().put(pccd.getClaim(), claimInJson);
+					producedValues.put(pccd.getClaim(), claimInJson);
+				}
+			} catch (TimeoutException e) {
+				entry.getValue().cancel(true);
+				claimsTimedOut.incrementAndGet();
+				failedClaims.add(pccd.getClaim());
+				applyTimeoutFallback(ui, pccd, lastValues, "not produced in " + pccd.getTimeout() + "ms");
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RuntimeException("interrupted while producing claim " + pccd.getClaim(), e);
+			} catch (ExecutionException e) {
+				futures.values().forEach(f -> f.cancel(true));
+				if (e.getCause() instanceof RuntimeException) {
+					throw (RuntimeException) e.getCause();
+				}
+				throw new RuntimeException("cannot produce claim " + pccd.getClaim(), e.getCause());
+			}
+		}
+
+		if (!failedClaims.isEmpty()) {
+			// failed claims are not marked as resolved, so they get produced again on demand, but not before
+			// the backoff passes - otherwise each hit of the cached UserInfo would wait for the timeout again
+			Set<String> inBackoff = new HashSet<>(failedClaims);
+			Set<String> previous = claimsInBackoff.getIfPresent(lastValuesKey);
+			if (previous != null) {
+				inBackoff.addAll(previous);
+			}
+			claimsInBackoff.put(lastValuesKey, inBackoff);
+		}
+
+		if (!producedValues.isEmpty()) {
+			Map<String, JsonNode> newLastValues = new HashMap<>();
+			if (lastValues != null) {
+				newLastValues.putAll(lastValues);
+			}
+			newLastValues.putAll(producedValues);
+			lastCustomClaimValues.put(lastValuesKey, newLastValues);
+		}
+	}
+
+	private void applyTimeoutFallback(PerunUserInfo ui, PerunCustomClaimDefinition pccd,
+									  Map<String, JsonNode> lastValues, String reason)
+	{
+		if (TimeoutFallback.LAST_VALUE.equals(pccd.getTimeoutFallback())
+				&& lastValues != null && lastValues.containsKey(pccd.getClaim()))
 		{
-			Facility facility = perunAdapter.getFacilityByClientId(clientId);
-			return new ClaimContextCommonParameters(facility);
+			log.warn("claim {} {}, using last known value", pccd.getClaim(), reason);
+			ui.getCustomClaims().put(pccd.getClaim(), lastValues.get(pccd.getClaim()));
+		} else {
+			log.warn("claim {} {}, omitting it", pccd.getClaim(), reason);
 		}
-	};
+	}
+
+	/**
+	 * Produce value of a single custom claim and apply the modifier on it.
+	 * @return Value of the claim or NULL if the value is null or empty.
+	 */
+	private JsonNode produceCustomClaimValue(PerunCustomClaimDefinition pccd, ClaimSourceProduceContext pctx) {
+		log.debug("producing value for custom claim {}", pccd.getClaim());
+		JsonNode claimInJson = pccd.getClaimSource().produceValue(pctx);
+		log.debug("produced value {}={}", pccd.getClaim(), claimInJson);
+		if (claimInJson == null || claimInJson.isNull()) {
+			log.debug("claim {} is null", pccd.getClaim());
+			return null;
+		} else if (claimInJson.isTextual() && !StringUtils.hasText(claimInJson.asText())) {
+			log.debug("claim {} is a string and it is empty or null", pccd.getClaim());
+			return null;
+		} else if ((claimInJson.isArray() || claimInJson.isObject()) && claimInJson.size() == 0) {
+			log.debug("claim {} is an object or array and it is empty or null", pccd.getClaim());
+			return null;
+		}
+		ClaimModifier claimModifier = pccd.getClaimModifier();
+		if (claimModifier != null) {
+			log.debug("modifying values of claim '{}' using {}", pccd.getClaim(), claimModifier);
+			//transform values
+			if (claimInJson.isTextual()) {
+				//transform a simple string value
+				claimInJson = TextNode.valueOf(claimModifier.modify(claimInJson.asText()));
+			} else if (claimInJson.isArray()) {
+				claimInJson = claimInJson.deepCopy();
+				//transform all strings in an array
+				ArrayNode arrayNode = (ArrayNode) claimInJson;
+				for (int i = 0; i < arrayNode.size(); i++) {
+					JsonNode item = arrayNode.get(i);
+					if (item.isTextual()) {
+						String original = item.asText();
+						String modified = claimModifier.modify(original);
+						arrayNode.set(i, TextNode.valueOf(modified));
+					}
+				}
+			}
+		}
+		return claimInJson;
+	}
 
 	private boolean shouldFillAttrs(Map<String, PerunAttributeValue> userAttributeValues) {
 		if (perunOidcConfig.isFillMissingUserAttrs()) {
@@ -618,8 +1295,15 @@ public class PerunUserInfoService implements UserInfoService {
 		return true;
 	}
 
+	/**
+	 * Check claims which have been produced for the UserInfo. Claims of scopes which have not been requested
+	 * and claims omitted after timeout are not present, so they are not checked.
+	 */
 	private boolean checkCustomClaims(PerunUserInfo userInfo) {
 		for (String claim: forceRegenerateUserinfoCustomClaims) {
+			if (!userInfo.getResolvedCustomClaims().contains(claim)) {
+				continue;
+			}
 			if (userInfo.getCustomClaims().get(claim) == null ||
 					userInfo.getCustomClaims().get(claim).isNull()) {
 				return false;
@@ -0,0 +1,65 @@
+package cz.muni.ics.oidc.server.userInfo;
+
+import java.util.Objects;
+
+/**
+ * Change of data in Perun which affects UserInfo objects. Identifies the changed entity (user, group or facility).
+ *
+ * @author Pavol Pluta <pavol.pluta1@gmail.com>
+ */
+public class UserInfoChangeEvent {
+
+	public enum Entity {
+		USER, GROUP, FACILITY
+	}
+
+	private final Entity entity;
+	private final long entityId;
+
+	public UserInfoChangeEvent(Entity entity, long entityId) {
+		this.entity = entity;
+		this.entityId = entityId;
+	}
+
+	/**
+	 * Create event from the textual representation of the entity type and ID.
+	 * @param entity Type of the entity (USER, GROUP or FACILITY), case insensitive.
+	 * @param entityId ID of the entity.
+	 * @return Event.
+	 * @throws IllegalArgumentException if the type of the entity is not known.
+	 */
+	public static UserInfoChangeEvent of(String entity, long entityId) {
+		return new UserInfoChangeEvent(Entity.valueOf(entity.trim().toUpperCase()), entityId);
+	}
+
+	public Entity getEntity() {
+		return entity;
+	}
+
+	public long getEntityId() {
+		return entityId;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) return true;
+		if (o == null || getClass() != o.getClass()) return false;
+		UserInfoChangeEvent that = (UserInfoChangeEvent) o;
+		return entityId == that.entityId &&
+				entity == that.entity;
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(entity, entityId);
+	}
+
+	@Override
+	public String toString() {
+		return "UserInfoChangeEvent{" +
+				"entity=" + entity +
+				", entityId=" + entityId +
+				'}';
+	}
+
+}
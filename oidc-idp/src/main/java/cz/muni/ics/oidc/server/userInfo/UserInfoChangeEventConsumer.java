@@ -0,0 +1,152 @@
+package cz.muni.ics.oidc.server.userInfo;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import cz.muni.ics.oidc.server.adapters.PerunMetadataCache;
+import cz.muni.ics.oidc.server.adapters.impl.PerunAdapterImpl;
+import cz.muni.ics.oidc.server.adapters.impl.PerunAdapterRpc;
+import cz.muni.ics.oidc.server.filters.MembershipDecisionCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Periodically reads events about changes in Perun from the configured source and invalidates the affected
+ * entries of the UserInfo cache, of the membership decision cache, of the facility index, of the metadata cache
+ * and of the caches of the RPC adapter. Runs on each node of the cluster, as each
+ * node has its own local caches.
+ *
+ * @author Pavol Pluta <pavol.pluta1@gmail.com>
+ */
+public class UserInfoChangeEventConsumer {
+
+	private static final Logger log = LoggerFactory.getLogger(UserInfoChangeEventConsumer.class);
+
+	private final PerunUserInfoService userInfoService;
+	private final UserInfoChangeEventSource source;
+	private final long pollInterval;
+
+	private MembershipDecisionCache membershipDecisionCache;
+	private PerunAdapterImpl perunAdapter;
+	private PerunAdapterRpc perunAdapterRpc;
+	private PerunMetadataCache metadataCache;
+
+	private final AtomicLong processed = new AtomicLong();
+	private final AtomicLong errors = new AtomicLong();
+	private ScheduledExecutorService executor;
+
+	public UserInfoChangeEventConsumer(PerunUserInfoService userInfoService, UserInfoChangeEventSource source,
+									   long pollInterval)
+	{
+		this.userInfoService = userInfoService;
+		this.source = source;
+		this.pollInterval = pollInterval;
+	}
+
+	public void setMembershipDecisionCache(MembershipDecisionCache membershipDecisionCache) {
+		this.membershipDecisionCache = membershipDecisionCache;
+	}
+
+	public void setPerunAdapter(PerunAdapterImpl perunAdapter) {
+		this.perunAdapter = perunAdapter;
+	}
+
+	public void setPerunAdapterRpc(PerunAdapterRpc perunAdapterRpc) {
+		this.perunAdapterRpc = perunAdapterRpc;
+	}
+
+	public void setMetadataCache(PerunMetadataCache metadataCache) {
+		this.metadataCache = metadataCache;
+	}
+
+	@PostConstruct
+	public void postInit() {
+		if (!source.isEnabled()) {
+			log.debug("UserInfo change events are disabled");
+			return;
+		}
+
+		executor = Executors.newSingleThreadScheduledExecutor(
+				new ThreadFactoryBuilder().setNameFormat("userinfo-events-%d").setDaemon(true).build());
+		executor.scheduleWithFixedDelay(this::poll, pollInterval, pollInterval, TimeUnit.MILLISECONDS);
+		log.info("UserInfo change events - source: {}, poll interval: {}ms", source.getClass().getSimpleName(), pollInterval);
+	}
+
+	@PreDestroy
+	public void preDestroy() {
+		if (executor != null) {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Get statistics of processed events.
+	 * @return Map of statistics.
+	 */
+	public Map<String, Long> getStats() {
+		Map<String, Long> stats = new LinkedHashMap<>();
+		stats.put("processedCount", processed.get());
+		stats.put("errorCount", errors.get());
+		return stats;
+	}
+
+	/**
+	 * Read new events from the source and invalidate affected entries. Duplicate events read at once
+	 * are processed only once.
+	 */
+	public void poll() {
+		try {
+			Set<UserInfoChangeEvent> events = new LinkedHashSet<>(source.poll());
+			for (UserInfoChangeEvent event : events) {
+				log.debug("processing {}", event);
+				switch (event.getEntity()) {
+					case USER:
+						userInfoService.invalidateUser(event.getEntityId());
+						if (membershipDecisionCache != null) {
+							membershipDecisionCache.invalidateUser(event.getEntityId());
+						}
+						break;
+					case GROUP:
+						userInfoService.invalidateGroup(event.getEntityId());
+						if (membershipDecisionCache != null) {
+							membershipDecisionCache.invalidateAll();
+						}
+						if (perunAdapterRpc != null) {
+							perunAdapterRpc.invalidateGroup(event.getEntityId());
+						}
+						if (metadataCache != null) {
+							metadataCache.invalidateGroup(event.getEntityId());
+						}
+						break;
+					case FACILITY:
+						userInfoService.invalidateFacility(event.getEntityId());
+						if (membershipDecisionCache != null) {
+							membershipDecisionCache.invalidateFacility(event.getEntityId());
+						}
+						if (perunAdapter != null) {
+							perunAdapter.invalidateFacility(event.getEntityId());
+						}
+						if (perunAdapterRpc != null) {
+							perunAdapterRpc.invalidateFacility(event.getEntityId());
+						}
+						break;
+				}
+				processed.incrementAndGet();
+			}
+		} catch (RuntimeException e) {
+			// exception would stop the periodic execution
+			errors.incrementAndGet();
+			log.warn("cannot process UserInfo change events", e);
+		}
+	}
+
+}
@@ -0,0 +1,27 @@
+package cz.muni.ics.oidc.server.userInfo;
+
+import java.util.List;
+
+/**
+ * Source of the events about changes in Perun. Used by UserInfoChangeEventConsumer to invalidate only
+ * the affected UserInfo objects.
+ *
+ * @see UserInfoChangeEventConsumer
+ *
+ * @author Pavol Pluta <pavol.pluta1@gmail.com>
+ */
+public interface UserInfoChangeEventSource {
+
+	/**
+	 * Check if the source is enabled.
+	 * @return TRUE if enabled, FALSE otherwise.
+	 */
+	boolean isEnabled();
+
+	/**
+	 * Get events that have appeared since the last call.
+	 * @return List of new events (filled or empty).
+	 */
+	List<UserInfoChangeEvent> poll();
+
+}
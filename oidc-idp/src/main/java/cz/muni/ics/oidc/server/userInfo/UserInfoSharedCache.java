@@ -0,0 +1,78 @@
+package cz.muni.ics.oidc.server.userInfo;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Second (shared) tier of the UserInfo cache. Entries stored in this tier are visible to all nodes
+ * of the cluster, so the UserInfo built by one node can be reused by the others.
+ *
+ * @author Pavol Pluta <pavol.pluta1@gmail.com>
+ */
+public interface UserInfoSharedCache {
+
+	/**
+	 * Check if the shared tier is enabled.
+	 * @return TRUE if enabled, FALSE otherwise.
+	 */
+	boolean isEnabled();
+
+	/**
+	 * Get stored UserInfo.
+	 * @param userId ID of the user.
+	 * @param clientId Client ID, can be NULL.
+	 * @return Stored UserInfo or NULL if no valid entry has been found.
+	 */
+	PerunUserInfo get(long userId, String clientId);
+
+	/**
+	 * Store UserInfo.
+	 * @param userId ID of the user.
+	 * @param clientId Client ID, can be NULL.
+	 * @param userInfo UserInfo to be stored.
+	 */
+	void put(long userId, String clientId, PerunUserInfo userInfo);
+
+	/**
+	 * Remove stored UserInfo for the given user and client.
+	 * @param userId ID of the user.
+	 * @param clientId Client ID, can be NULL.
+	 */
+	void invalidate(long userId, String clientId);
+
+	/**
+	 * Remove all stored UserInfo objects of the given user.
+	 * @param userId ID of the user.
+	 */
+	void invalidateUser(long userId);
+
+	/**
+	 * Remove all stored UserInfo objects of the given users.
+	 * @param userIds IDs of the users.
+	 */
+	void invalidateUsers(Collection<Long> userIds);
+
+	/**
+	 * Remove all stored UserInfo objects released to the given client.
+	 * @param clientId Client ID, can be NULL.
+	 */
+	void invalidateClient(String clientId);
+
+	/**
+	 * Remove all stored UserInfo objects.
+	 */
+	void invalidateAll();
+
+	/**
+	 * Remove entries that have already expired.
+	 * @return Number of removed entries.
+	 */
+	int clearExpired();
+
+	/**
+	 * Get statistics (hits, misses, etc.) of the shared tier.
+	 * @return Map of statistics.
+	 */
+	Map<String, Long> getStats();
+
+}
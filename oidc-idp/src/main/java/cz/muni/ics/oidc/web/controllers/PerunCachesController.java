@@ -0,0 +1,102 @@
+package cz.muni.ics.oidc.web.controllers;
+
+import cz.muni.ics.oidc.server.adapters.PerunAdapterRequestMemo;
+import cz.muni.ics.oidc.server.adapters.PerunMetadataCache;
+import cz.muni.ics.oidc.server.adapters.impl.PerunAdapterImpl;
+import cz.muni.ics.oidc.server.adapters.impl.PerunAdapterRpc;
+import cz.muni.ics.oidc.server.connectors.PerunConnectorRpc;
+import cz.muni.ics.oidc.server.connectors.RpcResponseCache;
+import cz.muni.ics.oidc.server.filters.MembershipDecisionCache;
+import cz.muni.ics.oidc.server.userInfo.PerunUserInfoService;
+import cz.muni.ics.oidc.server.userInfo.UserInfoChangeEventConsumer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Controller exposing statistics of the caches used by the application and allowing to flush cached
+ * responses of Perun RPC. Accessible only by admins.
+ *
+ * @author Pavol Pluta <pavol.pluta1@gmail.com>
+ */
+@Controller
+@PreAuthorize("hasRole('ROLE_ADMIN')")
+public class PerunCachesController {
+
+    private static final Logger log = LoggerFactory.getLogger(PerunCachesController.class);
+
+    public static final String MAPPING = "/api/perun/caches";
+    public static final String RPC_RESPONSES_MAPPING = MAPPING + "/rpcResponses";
+
+    private final PerunUserInfoService userInfoService;
+    private final UserInfoChangeEventConsumer userInfoChangeEventConsumer;
+    private final PerunAdapterRequestMemo perunAdapterRequestMemo;
+    private final PerunAdapterImpl perunAdapter;
+    private final PerunAdapterRpc perunAdapterRpc;
+    private final PerunMetadataCache perunMetadataCache;
+    private final RpcResponseCache rpcResponseCache;
+    private final PerunConnectorRpc perunConnectorRpc;
+    private final MembershipDecisionCache membershipDecisionCache;
+
+    @Autowired
+    public PerunCachesController(PerunUserInfoService userInfoService,
+                                 UserInfoChangeEventConsumer userInfoChangeEventConsumer,
+                                 PerunAdapterRequestMemo perunAdapterRequestMemo,
+                                 PerunAdapterImpl perunAdapter,
+                                 PerunAdapterRpc perunAdapterRpc,
+                                 PerunMetadataCache perunMetadataCache,
+                                 RpcResponseCache rpcResponseCache,
+                                 PerunConnectorRpc perunConnectorRpc,
+                                 MembershipDecisionCache membershipDecisionCache)
+    {
+        this.userInfoService = userInfoService;
+        this.userInfoChangeEventConsumer = userInfoChangeEventConsumer;
+        this.perunAdapterRequestMemo = perunAdapterRequestMemo;
+        this.perunAdapter = perunAdapter;
+        this.perunAdapterRpc = perunAdapterRpc;
+        this.perunMetadataCache = perunMetadataCache;
+        this.rpcResponseCache = rpcResponseCache;
+        this.perunConnectorRpc = perunConnectorRpc;
+        this.membershipDecisionCache = membershipDecisionCache;
+    }
+
+    @GetMapping(value = MAPPING, produces = MediaType.APPLICATION_JSON_VALUE)
+    @ResponseBody
+    public Map<String, Object> getStats() {
+        log.debug("Display statistics of caches");
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("userInfo", userInfoService.getCacheStats());
+        stats.put("userInfoEvents", userInfoChangeEventConsumer.getStats());
+        stats.put("perunAdapterRequestMemo", perunAdapterRequestMemo.getStats());
+        stats.put("facilityIndex", perunAdapter.getFacilityIndexStats());
+        stats.put("facilityCapabilities", perunAdapterRpc.getCapabilitiesCacheStats());
+        stats.put("perunMetadata", perunMetadataCache.getStats());
+        stats.put("rpcResponses", rpcResponseCache.getStats());
+        stats.put("circuitBreakers", perunAdapter.getCircuitBreakerStats());
+        stats.put("hedging", perunAdapter.getHedgingStats());
+        stats.put("adaptiveRouting", perunAdapter.getRoutingStats());
+        stats.put("rpcConnectionPool", perunConnectorRpc.getPoolStats());
+        stats.put("membershipDecisions", membershipDecisionCache.getStats());
+        return stats;
+    }
+
+    @DeleteMapping(value = RPC_RESPONSES_MAPPING)
+    @ResponseStatus(HttpStatus.NO_CONTENT)
+    public void flushRpcResponses(@RequestParam(value = "method", required = false) String method) {
+        log.info("Flush cached RPC responses of '{}'", method != null ? method : "all methods");
+        rpcResponseCache.flush(method);
+    }
+
+}
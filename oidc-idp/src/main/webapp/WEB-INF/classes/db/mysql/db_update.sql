@@ -8,3 +8,19 @@ CREATE TABLE shedlock(
     locked_by  VARCHAR(255),
     PRIMARY KEY (name)
 );
+
+CREATE TABLE IF NOT EXISTS perun_userinfo_cache (
+    user_id BIGINT NOT NULL,
+    client_id VARCHAR(256) NOT NULL,
+    userinfo TEXT NOT NULL,
+    expiration BIGINT NOT NULL,
+    PRIMARY KEY (user_id, client_id)
+);
+
+CREATE TABLE IF NOT EXISTS perun_userinfo_events (
+    id BIGINT AUTO_INCREMENT,
+    entity VARCHAR(16) NOT NULL,
+    entity_id BIGINT NOT NULL,
+    created TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    PRIMARY KEY (id)
+);